@@ -1,15 +1,41 @@
 package errors;
 
+import util.LineIndex;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ErrorManager {
-    private final List<String> errors = new ArrayList<>();
+    // mensajes y offsets donde se produjeron; línea/columna se sacan en getErrors()
+    private final List<String> messages = new ArrayList<>();
+    private int[] offsets = new int[16];
+    private final LineIndex lines;
+
+    public ErrorManager(LineIndex lines) {
+        this.lines = lines;
+    }
+
+    // para subclases que guardan los errores a su manera
+    protected ErrorManager() {
+        this(null);
+    }
+
+    public void addLexical(int offset, String msg) {
+        int k = messages.size();
+        if (k == offsets.length) offsets = Arrays.copyOf(offsets, k * 2);
+        offsets[k] = offset;
+        messages.add(msg);
+    }
 
-    public void addLexical(int line, int col, String msg) {
-        errors.add(String.format("%d:%d  [LEX] %s", line, col, msg));
+    public List<String> getErrors() {
+        List<String> out = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            int off = offsets[i];
+            out.add(String.format("%d:%d  [LEX] %s", lines.line(off), lines.col(off), messages.get(i)));
+        }
+        return out;
     }
 
-    public List<String> getErrors() { return errors; }
-    public boolean hasErrors() { return !errors.isEmpty(); }
+    public boolean hasErrors() { return !messages.isEmpty(); }
 }
@@ -0,0 +1,12 @@
+package ir;
+
+/**
+ * Análisis que el PassManager calcula para las pasadas y guarda mientras
+ * el código no cambie. LIVENESS y DOMINATORS se calculan sobre el CFG: si
+ * el CFG deja de valer, ellos también.
+ */
+public enum Analysis {
+    CFG,
+    LIVENESS,
+    DOMINATORS
+}
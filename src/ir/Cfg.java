@@ -0,0 +1,95 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grafo de flujo de un IR: bloques básicos y sus aristas.
+ *
+ * Un bloque empieza en una etiqueta o detrás de un salto, halt o return.
+ * Un "call" no corta el bloque: para el flujo es una instrucción más (que
+ * puede leer y escribir cualquier variable). Son entradas el bloque 0 y los
+ * que empiezan en la etiqueta de un procedimiento al que se llama.
+ */
+public class Cfg {
+
+    public static final class Block {
+        public final int id;
+        public final int start, end; // instrucciones [start, end)
+        public final List<Block> succ = new ArrayList<>();
+        public final List<Block> pred = new ArrayList<>();
+        public boolean entry;
+
+        Block(int id, int start, int end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public final List<Instr> code;
+    public final List<Block> blocks = new ArrayList<>();
+    private final Map<String, Block> byLabel = new HashMap<>();
+
+    public Cfg(List<Instr> code) {
+        this.code = code;
+        int n = code.size();
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        Set<String> called = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            Instr in = code.get(i);
+            if (in.isLabel()) leader[i] = true;
+            if (in.jumpTarget() != null || in.op.equals("halt") || in.op.equals("return")) leader[i + 1] = true;
+            if (in.op.equals("call")) called.add(in.a);
+        }
+
+        int start = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || leader[i]) {
+                if (start < i) {
+                    Block b = new Block(blocks.size(), start, i);
+                    blocks.add(b);
+                    Instr first = code.get(start);
+                    if (first.isLabel()) {
+                        byLabel.put(first.a, b);
+                        if (called.contains(first.a)) b.entry = true;
+                    }
+                }
+                start = i;
+            }
+        }
+        if (!blocks.isEmpty()) blocks.get(0).entry = true;
+
+        for (int k = 0; k < blocks.size(); k++) {
+            Block b = blocks.get(k);
+            Instr last = code.get(b.end - 1);
+            String target = last.jumpTarget();
+            if (target != null) {
+                Block t = byLabel.get(target);
+                if (t == null) throw new IllegalArgumentException("Etiqueta no definida: " + target);
+                link(b, t);
+            }
+            boolean fallsThrough = !last.op.equals("goto") && !last.op.equals("halt") && !last.op.equals("return");
+            if (fallsThrough && k + 1 < blocks.size()) link(b, blocks.get(k + 1));
+        }
+    }
+
+    private static void link(Block from, Block to) {
+        if (from.succ.contains(to)) return;
+        from.succ.add(to);
+        to.pred.add(from);
+    }
+
+    /** Bloque que empieza en la etiqueta. */
+    public Block labelBlock(String label) { return byLabel.get(label); }
+
+    /** Siguiente bloque en el orden del código (o null), para saber qué arista es la de "caer". */
+    public Block next(Block b) {
+        return (b.id + 1 < blocks.size()) ? blocks.get(b.id + 1) : null;
+    }
+}
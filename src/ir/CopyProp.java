@@ -0,0 +1,101 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Propagación de copias sobre el grafo de flujo: tras "copy x -> y", los
+ * usos de y se cambian por x mientras ni x ni y se vuelvan a escribir por
+ * ningún camino. Luego DeadCode se lleva los copy que se quedan sin usos.
+ *
+ * Como en Sccp, un call puede escribir cualquier variable del programa.
+ */
+public class CopyProp implements Pass {
+
+    private Set<String> vars;
+
+    @Override
+    public String name() { return "copyprop"; }
+
+    @Override
+    public Set<Analysis> requires() { return EnumSet.of(Analysis.CFG); }
+
+    /** Solo cambia operandos, instrucción por instrucción: los bloques y los saltos son los mismos. */
+    @Override
+    public Set<Analysis> preserves() { return EnumSet.of(Analysis.CFG, Analysis.DOMINATORS); }
+
+    @Override
+    public boolean run(PassManager pm) {
+        List<Instr> code = pm.code();
+        vars = pm.vars();
+        Cfg cfg = pm.cfg();
+
+        // copias disponibles a la entrada de cada bloque (null = aún no alcanzado)
+        List<Map<String, String>> in = new ArrayList<>();
+        ArrayDeque<Cfg.Block> work = new ArrayDeque<>();
+        for (Cfg.Block b : cfg.blocks) {
+            in.add(b.entry ? new HashMap<>() : null);
+            if (b.entry) work.add(b);
+        }
+        while (!work.isEmpty()) {
+            Cfg.Block b = work.poll();
+            Map<String, String> state = new HashMap<>(in.get(b.id));
+            for (int i = b.start; i < b.end; i++) transfer(code.get(i), state);
+            for (Cfg.Block s : b.succ) {
+                if (merge(in, s, state)) work.add(s);
+            }
+        }
+
+        List<Instr> out = new ArrayList<>(code.size());
+        for (Cfg.Block b : cfg.blocks) {
+            Map<String, String> state = (in.get(b.id) == null) ? new HashMap<>() : new HashMap<>(in.get(b.id));
+            for (int i = b.start; i < b.end; i++) {
+                Instr ins = code.get(i);
+                if (ins.readsOperands()) {
+                    ins = new Instr(ins.op, state.getOrDefault(ins.a, ins.a), state.getOrDefault(ins.b, ins.b), ins.c);
+                }
+                out.add(ins);
+                transfer(ins, state);
+            }
+        }
+        boolean changed = !out.equals(code);
+        code.clear();
+        code.addAll(out);
+        return changed;
+    }
+
+    private boolean merge(List<Map<String, String>> in, Cfg.Block s, Map<String, String> state) {
+        Map<String, String> cur = in.get(s.id);
+        if (cur == null) {
+            in.set(s.id, new HashMap<>(state));
+            return true;
+        }
+        boolean changed = false;
+        for (Iterator<Map.Entry<String, String>> it = cur.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> e = it.next();
+            if (!e.getValue().equals(state.get(e.getKey()))) {
+                it.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void transfer(Instr in, Map<String, String> state) {
+        if (in.op.equals("call")) {
+            state.entrySet().removeIf(e -> !Instr.isTemp(e.getKey(), vars) || !Instr.isTemp(e.getValue(), vars));
+            return;
+        }
+        if (!in.isDef()) return;
+        String a = state.getOrDefault(in.a, in.a);
+        state.remove(in.c);
+        state.values().removeIf(in.c::equals);
+        if (in.op.equals("copy") && Instr.isVar(a) && !a.equals(in.c)) state.put(in.c, a);
+    }
+}
@@ -0,0 +1,59 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Elimina copy y operaciones cuyo resultado no se usa (según Liveness),
+ * repitiendo mientras caigan más (una copia muerta puede dejar muerta la
+ * anterior). div/mod solo se quitan si el divisor es una constante distinta
+ * de 0: si no, pueden fallar en ejecución.
+ */
+public class DeadCode implements Pass {
+
+    @Override
+    public String name() { return "deadcode"; }
+
+    @Override
+    public Set<Analysis> requires() { return EnumSet.of(Analysis.CFG, Analysis.LIVENESS); }
+
+    @Override
+    public boolean run(PassManager pm) {
+        List<Instr> code = pm.code();
+        boolean any = false;
+        while (true) {
+            Cfg cfg = pm.cfg();
+            Liveness live = pm.liveness();
+            List<Instr> out = new ArrayList<>(code.size());
+            int removed = 0;
+            for (Cfg.Block b : cfg.blocks) {
+                Set<String> l = new HashSet<>(live.liveOut(b));
+                List<Instr> kept = new ArrayList<>(b.end - b.start);
+                for (int i = b.end - 1; i >= b.start; i--) {
+                    Instr in = code.get(i);
+                    if (in.isDef() && !l.contains(in.c) && !mayFail(in)) {
+                        removed++;
+                        continue;
+                    }
+                    live.step(in, l);
+                    kept.add(in);
+                }
+                for (int i = kept.size() - 1; i >= 0; i--) out.add(kept.get(i));
+            }
+            if (removed == 0) return any;
+            any = true;
+            code.clear();
+            code.addAll(out);
+            pm.changed();
+        }
+    }
+
+    static boolean mayFail(Instr in) {
+        if (!in.op.equals("div") && !in.op.equals("mod")) return false;
+        Integer d = Instr.constValue(in.b);
+        return d == null || d == 0;
+    }
+}
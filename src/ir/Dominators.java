@@ -0,0 +1,121 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dominadores de los bloques de un Cfg: el algoritmo iterativo de Cooper,
+ * Harvey y Kennedy sobre el orden posterior inverso.
+ *
+ * Como hay varias entradas (main y cada procedimiento al que se llama),
+ * todas cuelgan de una raíz virtual; una entrada no tiene idom. Los bloques
+ * a los que no se llega no dominan ni están dominados por nada.
+ *
+ * dominates() es O(1): se numera el árbol de dominadores en preorden y
+ * postorden.
+ */
+public class Dominators {
+
+    private final int root;      // raíz virtual (= número de bloques)
+    private final int[] idom;    // -1: inalcanzable
+    private final int[] pre, post;
+
+    public Dominators(Cfg cfg) {
+        int n = cfg.blocks.size();
+        root = n;
+        int[] rpo = reversePostorder(cfg);
+        int[] order = new int[n + 1]; // posición en rpo
+        Arrays.fill(order, -1);
+        for (int k = 0; k < rpo.length; k++) order[rpo[k]] = k;
+
+        idom = new int[n + 1];
+        Arrays.fill(idom, -1);
+        idom[root] = root;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int k = 1; k < rpo.length; k++) {
+                Cfg.Block b = cfg.blocks.get(rpo[k]);
+                int d = b.entry ? root : -1;
+                for (Cfg.Block p : b.pred) {
+                    if (idom[p.id] < 0) continue; // aún sin procesar o inalcanzable
+                    d = (d < 0) ? p.id : intersect(p.id, d, order);
+                }
+                if (idom[b.id] != d) {
+                    idom[b.id] = d;
+                    changed = true;
+                }
+            }
+        }
+
+        // numeración del árbol (sin recursión: puede ser muy profundo)
+        List<List<Integer>> children = new ArrayList<>();
+        for (int i = 0; i <= n; i++) children.add(new ArrayList<>());
+        for (int i = 0; i < n; i++) if (idom[i] >= 0) children.get(idom[i]).add(i);
+        pre = new int[n + 1];
+        post = new int[n + 1];
+        Arrays.fill(pre, -1);
+        int[] stack = new int[n + 1], next = new int[n + 1];
+        int sp = 0, clock = 0;
+        stack[sp++] = root;
+        pre[root] = clock++;
+        while (sp > 0) {
+            int b = stack[sp - 1];
+            if (next[b] < children.get(b).size()) {
+                int c = children.get(b).get(next[b]++);
+                pre[c] = clock++;
+                stack[sp++] = c;
+            } else {
+                post[b] = clock++;
+                sp--;
+            }
+        }
+    }
+
+    private int intersect(int x, int y, int[] order) {
+        while (x != y) {
+            while (order[x] > order[y]) x = idom[x];
+            while (order[y] > order[x]) y = idom[y];
+        }
+        return x;
+    }
+
+    // Raíz virtual y luego los bloques alcanzables desde las entradas, en orden posterior inverso
+    private int[] reversePostorder(Cfg cfg) {
+        int n = cfg.blocks.size();
+        int[] out = new int[n + 1];
+        int k = n + 1;
+        boolean[] seen = new boolean[n];
+        int[] stack = new int[n], next = new int[n];
+        for (Cfg.Block e : cfg.blocks) {
+            if (!e.entry || seen[e.id]) continue;
+            int sp = 0;
+            stack[sp++] = e.id;
+            seen[e.id] = true;
+            while (sp > 0) {
+                Cfg.Block b = cfg.blocks.get(stack[sp - 1]);
+                if (next[b.id] < b.succ.size()) {
+                    Cfg.Block s = b.succ.get(next[b.id]++);
+                    if (!seen[s.id]) {
+                        seen[s.id] = true;
+                        stack[sp++] = s.id;
+                    }
+                } else {
+                    out[--k] = b.id;
+                    sp--;
+                }
+            }
+        }
+        out[--k] = root;
+        return Arrays.copyOfRange(out, k, n + 1);
+    }
+
+    public boolean isReachable(Cfg.Block b) { return idom[b.id] >= 0; }
+
+    /** ¿Pasa por a todo camino desde una entrada hasta b? (a domina a a) */
+    public boolean dominates(Cfg.Block a, Cfg.Block b) {
+        if (!isReachable(a) || !isReachable(b)) return false;
+        return pre[a.id] <= pre[b.id] && post[b.id] <= post[a.id];
+    }
+}
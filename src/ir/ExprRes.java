@@ -6,8 +6,26 @@ public class ExprRes {
     public final Type type;
     public final String r;   // “lugar” donde queda el resultado (temp/ID)
 
+    // Opcional: valor si se conoce al compilar, y operación IR + operandos que lo
+    // produjeron (p.ej. "if_LT" i t3). Lo usa el parser para reconocer bucles contados.
+    public final Integer cval;
+    public final String op;
+    public final ExprRes left, right;
+
     public ExprRes(Type type, String r) {
+        this(type, r, null, null, null, null);
+    }
+
+    public ExprRes(Type type, String r, Integer cval) {
+        this(type, r, cval, null, null, null);
+    }
+
+    public ExprRes(Type type, String r, Integer cval, String op, ExprRes left, ExprRes right) {
         this.type = type;
         this.r = r;
+        this.cval = cval;
+        this.op = op;
+        this.left = left;
+        this.right = right;
     }
 }
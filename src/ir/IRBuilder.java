@@ -1,33 +1,143 @@
 package ir;
 
+import util.OutputWriter;
+
+import java.io.IOException;
 import java.util.*;
 
 public class IRBuilder {
 
-    private final List<String> code = new ArrayList<>();
-    private int tempCount = 0;
-    private int labelCount = 0;
+    // Contadores de temporales/etiquetas; varios builders pueden compartirlos
+    private static final class Counters {
+        int temps, labels;
+    }
+
+    private final List<Instr> code = new ArrayList<>();
+    private final Counters counters;
 
-    public String newTemp() { return "t" + (++tempCount); }
-    public String newLabel() { return "L" + (++labelCount); }
+    public IRBuilder() {
+        this(new Counters());
+    }
+
+    private IRBuilder(Counters counters) {
+        this.counters = counters;
+    }
+
+    /** Builder vacío que comparte contadores con este (código de un procedimiento). */
+    public IRBuilder sharingCounters() {
+        return new IRBuilder(counters);
+    }
+
+    public String newTemp() { return "t" + (++counters.temps); }
+    public String newLabel() { return "L" + (++counters.labels); }
 
     // Formato “3 direcciones” estilo apuntes: op a b c
     public void emit(String op, String a, String b, String c) {
-        code.add(String.format("%-7s %-8s %-8s %-8s",
-                op,
-                a == null ? "" : a,
-                b == null ? "" : b,
-                c == null ? "" : c));
+        code.add(new Instr(op, a, b, c));
     }
 
     // Etiqueta estilo “skip Lx”
     public void emitLabel(String label) {
-        code.add(String.format("%-7s %-8s", "skip", label));
+        code.add(new Instr("skip", label, null, null));
+    }
+
+    public List<Instr> getInstrs() { return code; }
+    public int size() { return code.size(); }
+
+    /** Quita y devuelve las instrucciones desde 'from' (para recolocarlas después). */
+    public List<Instr> cut(int from) {
+        List<Instr> tail = code.subList(from, code.size());
+        List<Instr> out = new ArrayList<>(tail);
+        tail.clear();
+        return out;
+    }
+
+    public void append(List<Instr> instrs) {
+        code.addAll(instrs);
+    }
+
+    /** Añade una copia de instrs con etiquetas nuevas para las que se definen dentro. */
+    public void appendCopy(List<Instr> instrs) {
+        Map<String, String> rename = new HashMap<>();
+        for (Instr in : instrs) {
+            if (in.isLabel()) rename.put(in.a, newLabel());
+        }
+        if (rename.isEmpty()) { code.addAll(instrs); return; }
+        for (Instr in : instrs) {
+            code.add(new Instr(in.op,
+                    rename.getOrDefault(in.a, in.a),
+                    rename.getOrDefault(in.b, in.b),
+                    rename.getOrDefault(in.c, in.c)));
+        }
+    }
+    public int getTempCount() { return counters.temps; }
+    public int getLabelCount() { return counters.labels; }
+
+    /** Ajusta los contadores (al cargar código ya generado). */
+    public void setCounters(int temps, int labels) {
+        counters.temps = temps;
+        counters.labels = labels;
     }
 
     public String getCode() {
         StringBuilder sb = new StringBuilder();
-        for (String s : code) sb.append(s).append('\n');
+        for (Instr s : code) sb.append(s).append('\n');
         return sb.toString();
     }
+
+    /** Lo mismo que getCode(), escrito directamente en out. */
+    public void writeTo(OutputWriter out) throws IOException {
+        for (Instr s : code) {
+            s.writeTo(out);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Lee el formato de intermediate.txt (columnas de 7/8/8/8 caracteres).
+     * Los campos vacíos son solo espacios, así que se leen por posición.
+     */
+    public static IRBuilder fromText(String text) {
+        IRBuilder ir = new IRBuilder();
+        int maxTemp = 0, maxLabel = 0;
+        for (String line : text.split("\n")) {
+            if (line.trim().isEmpty()) continue;
+            String[] f = new String[4];
+            int pos = 0;
+            for (int k = 0; k < 4 && pos < line.length(); k++) {
+                int width = (k == 0) ? 7 : 8;
+                if (line.charAt(pos) == ' ') { pos += width + 1; continue; }
+                int end = fieldEnd(line, pos);
+                f[k] = line.substring(pos, end);
+                pos += Math.max(end - pos, width) + 1;
+            }
+            Instr in = new Instr(f[0], f[1], f[2], f[3]);
+            ir.code.add(in);
+            for (String s : new String[] { in.a, in.b, in.c }) {
+                maxTemp = Math.max(maxTemp, counterOf(s, 't'));
+                maxLabel = Math.max(maxLabel, counterOf(s, 'L'));
+            }
+        }
+        ir.setCounters(maxTemp, maxLabel);
+        return ir;
+    }
+
+    // Fin de un campo; los literales char pueden llevar espacio: ' '
+    private static int fieldEnd(String line, int pos) {
+        if (line.charAt(pos) == '\'') {
+            int i = pos + 1;
+            if (i < line.length() && line.charAt(i) == '\\') i++;
+            i++; // el carácter
+            if (i < line.length() && line.charAt(i) == '\'') return i + 1;
+        }
+        int end = line.indexOf(' ', pos);
+        return end < 0 ? line.length() : end;
+    }
+
+    // n si s es "<prefix>n" (t3, L7), 0 si no
+    private static int counterOf(String s, char prefix) {
+        if (s == null || s.length() < 2 || s.length() > 10 || s.charAt(0) != prefix) return 0;
+        for (int i = 1; i < s.length(); i++) if (!Character.isDigit(s.charAt(i))) return 0;
+        return Integer.parseInt(s.substring(1));
+    }
 }
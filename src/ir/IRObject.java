@@ -0,0 +1,157 @@
+package ir;
+
+import sem.SymbolTable;
+import sem.Type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vista de solo lectura de un fichero .irb (ver IRObjectWriter).
+ *
+ * El fichero se proyecta en memoria y las instrucciones se leen directamente
+ * del buffer; las strings se decodifican la primera vez que se piden.
+ * Solo se lee la versión actual (IRObjectWriter.VERSION).
+ */
+public class IRObject {
+
+    private final ByteBuffer buf;
+    private final int stringCount;
+    private final int instrCount;
+    private final int labelCount;
+    private final int tempCounter;
+    private final int labelCounter;
+    private final int symbolCount;
+    private final int exportCount;
+    private final long sourceHash;
+    private final long importHash;
+
+    // posiciones de cada sección dentro del buffer
+    private final int stringOffsets;
+    private final int stringData;
+    private final int instrStart;
+    private final int labelStart;
+    private final int symbolStart;
+    private final int exportStart;
+
+    private final String[] strings;
+
+    private IRObject(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < 8 || buf.getInt(0) != IRObjectWriter.MAGIC) {
+            throw new IOException("No es un fichero IR binario");
+        }
+        int version = buf.getInt(4);
+        if (version != IRObjectWriter.VERSION) {
+            throw new IOException("Versión de IR binario no soportada: " + version);
+        }
+        if (buf.limit() < IRObjectWriter.HEADER_BYTES) throw new IOException("IR binario truncado");
+        stringCount = buf.getInt(8);
+        int dataBytes = buf.getInt(12);
+        instrCount = buf.getInt(16);
+        labelCount = buf.getInt(20);
+        tempCounter = buf.getInt(24);
+        labelCounter = buf.getInt(28);
+        symbolCount = buf.getInt(32);
+        exportCount = buf.getInt(36);
+        sourceHash = buf.getLong(40);
+        importHash = buf.getLong(48);
+
+        stringOffsets = IRObjectWriter.HEADER_BYTES;
+        stringData = stringOffsets + stringCount * 4;
+        instrStart = stringData + ((dataBytes + 3) & ~3);
+        labelStart = instrStart + instrCount * IRObjectWriter.INSTR_BYTES;
+        symbolStart = labelStart + labelCount * IRObjectWriter.LABEL_BYTES;
+        exportStart = symbolStart + symbolCount * IRObjectWriter.SYMBOL_BYTES;
+        if (exportStart + exportCount * 4 > buf.limit()) {
+            throw new IOException("IR binario truncado");
+        }
+        strings = new String[stringCount];
+    }
+
+    public static IRObject open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new IRObject(m);
+        }
+    }
+
+    /**
+     * {hash del fuente, hash de lo importado} de un objeto de unidad, leyendo
+     * solo la cabecera (sin proyectar el fichero, que quizá se va a
+     * sobrescribir); null si no existe o no es un objeto de la versión actual.
+     */
+    public static long[] readStamp(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        ByteBuffer h = ByteBuffer.allocate(IRObjectWriter.HEADER_BYTES);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (h.hasRemaining() && ch.read(h) > 0) { }
+        }
+        if (h.hasRemaining() || h.getInt(0) != IRObjectWriter.MAGIC || h.getInt(4) != IRObjectWriter.VERSION) return null;
+        return new long[] { h.getLong(40), h.getLong(48) };
+    }
+
+    public int instrCount() { return instrCount; }
+    public long sourceHash() { return sourceHash; }
+    public long importHash() { return importHash; }
+    public int labelCount() { return labelCount; }
+
+    /** Índice de string del campo k (0 = op, 1..3 = a, b, c) de la instrucción i; -1 si vacío. */
+    public int field(int i, int k) {
+        return buf.getInt(instrStart + i * IRObjectWriter.INSTR_BYTES + k * 4);
+    }
+
+    public String op(int i) { return string(field(i, 0)); }
+    public String operand(int i, int k) { return string(field(i, k)); }
+
+    /** Etiqueta n-ésima de la tabla y el índice de su instrucción. */
+    public String labelName(int n) { return string(buf.getInt(labelStart + n * IRObjectWriter.LABEL_BYTES)); }
+    public int labelTarget(int n) { return buf.getInt(labelStart + n * IRObjectWriter.LABEL_BYTES + 4); }
+
+    public String string(int id) {
+        if (id < 0) return null;
+        String s = strings[id];
+        if (s == null) {
+            int from = buf.getInt(stringOffsets + id * 4);
+            int to = (id + 1 < stringCount) ? buf.getInt(stringOffsets + (id + 1) * 4) : buf.getInt(12);
+            byte[] bytes = new byte[to - from];
+            for (int k = 0; k < bytes.length; k++) bytes[k] = buf.get(stringData + from + k);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    public Instr instr(int i) {
+        return new Instr(op(i), operand(i, 1), operand(i, 2), operand(i, 3));
+    }
+
+    /** Copia completa a un IRBuilder (p.ej. para volver al formato de texto). */
+    public IRBuilder toBuilder() {
+        IRBuilder ir = new IRBuilder();
+        for (int i = 0; i < instrCount; i++) ir.getInstrs().add(instr(i));
+        ir.setCounters(tempCounter, labelCounter);
+        return ir;
+    }
+
+    /** La unidad de compilación completa (código, símbolos y exports). */
+    public Unit toUnit(String name) {
+        List<SymbolTable.Entry> symbols = new ArrayList<>(symbolCount);
+        for (int n = 0; n < symbolCount; n++) {
+            int at = symbolStart + n * IRObjectWriter.SYMBOL_BYTES;
+            symbols.add(new SymbolTable.Entry(buf.getInt(at), string(buf.getInt(at + 4)),
+                    Type.valueOf(string(buf.getInt(at + 8)))));
+        }
+        List<String> exports = new ArrayList<>(exportCount);
+        for (int n = 0; n < exportCount; n++) exports.add(string(buf.getInt(exportStart + n * 4)));
+        return new Unit(name, toBuilder(), symbols, exports, sourceHash, importHash);
+    }
+}
@@ -0,0 +1,129 @@
+package ir;
+
+import sem.SymbolTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escribe el programa IR en formato binario compacto (.irb).
+ *
+ * Disposición (big-endian, todo alineado a 4 bytes):
+ *   cabecera      10 ints: magic, versión, nº strings, bytes de strings,
+ *                 nº instrucciones, nº etiquetas, contador de temporales,
+ *                 contador de etiquetas, nº símbolos, nº exports
+ *                 y 2 longs: hash del fuente y hash de lo importado (ver Unit)
+ *   strings       nº strings ints (offset de cada una) + datos UTF-8 (con relleno)
+ *   instrucciones 4 ints cada una: op, a, b, c (índices de string, -1 = vacío)
+ *   etiquetas     2 ints cada una: string de la etiqueta, índice de su "skip"
+ *   símbolos      3 ints cada uno: scope, string del nombre, string del tipo
+ *   exports       1 int cada uno: string del export
+ *
+ * Se escribe con una sola escritura agrupada (gathering) sobre el FileChannel.
+ */
+public final class IRObjectWriter {
+
+    public static final int MAGIC = 0x4D495242; // "MIRB"
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 56;
+    public static final int INSTR_BYTES = 16;
+    public static final int LABEL_BYTES = 8;
+    public static final int SYMBOL_BYTES = 12;
+
+    private IRObjectWriter() { }
+
+    /** Programa suelto (sin símbolos ni exports). */
+    public static void write(IRBuilder ir, Path file) throws IOException {
+        write(ir, new ArrayList<>(), new ArrayList<>(), 0, 0, file);
+    }
+
+    /** Objeto de una unidad de compilación. */
+    public static void write(Unit u, Path file) throws IOException {
+        write(u.code, u.symbols, u.exports, u.sourceHash, u.importHash, file);
+    }
+
+    private static void write(IRBuilder ir, List<SymbolTable.Entry> symbols, List<String> exports,
+                              long sourceHash, long importHash, Path file) throws IOException {
+        List<Instr> code = ir.getInstrs();
+
+        // tabla de strings (orden de primera aparición)
+        Map<String, Integer> index = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int dataBytes = 0;
+
+        ByteBuffer instrs = ByteBuffer.allocate(code.size() * INSTR_BYTES);
+        int labels = 0;
+        for (Instr in : code) {
+            instrs.putInt(intern(in.op, index, strings));
+            instrs.putInt(intern(in.a, index, strings));
+            instrs.putInt(intern(in.b, index, strings));
+            instrs.putInt(intern(in.c, index, strings));
+            if (in.isLabel()) labels++;
+        }
+        instrs.flip();
+
+        ByteBuffer labelTable = ByteBuffer.allocate(labels * LABEL_BYTES);
+        for (int i = 0; i < code.size(); i++) {
+            Instr in = code.get(i);
+            if (!in.isLabel()) continue;
+            labelTable.putInt(index.get(in.a));
+            labelTable.putInt(i);
+        }
+        labelTable.flip();
+
+        ByteBuffer unitTable = ByteBuffer.allocate(symbols.size() * SYMBOL_BYTES + exports.size() * 4);
+        for (SymbolTable.Entry e : symbols) {
+            unitTable.putInt(e.scopeLevel);
+            unitTable.putInt(intern(e.name, index, strings));
+            unitTable.putInt(intern(e.type.name(), index, strings));
+        }
+        for (String e : exports) unitTable.putInt(intern(e, index, strings));
+        unitTable.flip();
+
+        for (byte[] s : strings) dataBytes += s.length;
+        int padded = (dataBytes + 3) & ~3;
+        ByteBuffer stringTable = ByteBuffer.allocate(strings.size() * 4 + padded);
+        int off = 0;
+        for (byte[] s : strings) {
+            stringTable.putInt(off);
+            off += s.length;
+        }
+        for (byte[] s : strings) stringTable.put(s);
+        stringTable.position(stringTable.limit());
+        stringTable.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION)
+              .putInt(strings.size()).putInt(dataBytes)
+              .putInt(code.size()).putInt(labels)
+              .putInt(ir.getTempCount()).putInt(ir.getLabelCount())
+              .putInt(symbols.size()).putInt(exports.size())
+              .putLong(sourceHash).putLong(importHash);
+        header.flip();
+
+        ByteBuffer[] parts = { header, stringTable, instrs, labelTable, unitTable };
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long left = HEADER_BYTES + stringTable.limit() + instrs.limit() + labelTable.limit() + unitTable.limit();
+            while (left > 0) left -= ch.write(parts);
+        }
+    }
+
+    private static int intern(String s, Map<String, Integer> index, List<byte[]> strings) {
+        if (s == null) return -1;
+        Integer i = index.get(s);
+        if (i != null) return i;
+        int id = strings.size();
+        index.put(s, id);
+        strings.add(s.getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+}
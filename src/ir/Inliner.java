@@ -0,0 +1,315 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Inlining de procedimientos sobre el IR.
+ *
+ * Cada llamada "call P_f" se sustituye por una copia del código de f (sin su
+ * "return"), con temporales y etiquetas renombrados. Los procedimientos se
+ * tratan de abajo arriba en el grafo de llamadas, así que se copia el código
+ * del callee con lo que ya se le haya inlinado. Los que forman un ciclo
+ * (recursión directa o indirecta) nunca se inlinan.
+ *
+ * Decisión por sitio de llamada (ver Config):
+ *  - tamaño del callee <= maxSize + loopBonus * profundidad de bucle, o
+ *  - es la única llamada al callee y su tamaño <= singleCallMaxSize
+ *    (el cuerpo original desaparece, así que el programa apenas crece),
+ * y siempre sin pasar de maxGrowth instrucciones de crecimiento total.
+ */
+public class Inliner {
+
+    public static class Config {
+        public boolean enabled = true;
+        public int maxSize = 16;             // instrucciones del callee
+        public int loopBonus = 16;           // extra por cada nivel de bucle en el sitio de llamada
+        public int singleCallMaxSize = 400;  // callee con una sola llamada
+        public int maxGrowth = 2000;         // crecimiento total permitido
+    }
+
+    /** Procedimiento: etiqueta de entrada y código (acaba en "return"). */
+    public static class Proc {
+        public final String name;
+        public final String label;
+        public final IRBuilder code;
+
+        public Proc(String name, String label, IRBuilder code) {
+            this.name = name;
+            this.label = label;
+            this.code = code;
+        }
+    }
+
+    private final Config cfg;
+    private final IRBuilder main;
+    private final Map<String, Proc> byLabel = new LinkedHashMap<>();
+    private final Set<String> vars;
+    private final Map<String, Integer> sites = new HashMap<>();
+    private Set<String> exported = new HashSet<>();
+    private final StringBuilder report = new StringBuilder();
+    private int growth = 0;
+
+    /**
+     * @param vars nombres de variables del programa (no se renombran aunque
+     *             parezcan temporales, p.ej. una variable llamada t1)
+     */
+    public Inliner(Config cfg, IRBuilder main, List<Proc> procs, Set<String> vars) {
+        this.cfg = cfg;
+        this.main = main;
+        this.vars = vars;
+        for (Proc p : procs) byLabel.put(p.label, p);
+    }
+
+    /**
+     * Procedimientos a los que se llama desde fuera (otras unidades): su
+     * código se conserva siempre, así que la regla de la llamada única no
+     * les vale (el cuerpo no desaparece al inlinarlo).
+     */
+    public void setExported(Set<String> labels) { this.exported = labels; }
+
+    /**
+     * Hace el inlining (modifica el código de main y de los procedimientos)
+     * y devuelve los procedimientos que siguen haciendo falta.
+     */
+    public List<Proc> run() {
+        int before = main.size();
+        for (Proc p : byLabel.values()) before += p.code.size() + 1; // + etiqueta de entrada
+        countSites(main.getInstrs());
+        for (Proc p : byLabel.values()) countSites(p.code.getInstrs());
+
+        Set<String> recursive = recursiveProcs();
+        report.append("INLINE REPORT\n");
+        report.append("--------------------------------\n");
+
+        if (cfg.enabled) {
+            for (String label : postOrder()) {
+                Proc p = byLabel.get(label);
+                inlineInto(p.code, p.name, recursive);
+            }
+            inlineInto(main, "program", recursive);
+        }
+
+        List<Proc> kept = reachable();
+        int after = main.size() + (kept.isEmpty() ? 0 : 1); // + halt
+        for (Proc p : kept) after += p.code.size() + 1;
+        for (Proc p : byLabel.values()) {
+            if (!kept.contains(p)) report.append(String.format("eliminado %s (no quedan llamadas)%n", p.name));
+        }
+        report.append(String.format("instrucciones: antes %d, después %d (%+d)%n", before, after, after - before));
+        return kept;
+    }
+
+    public String getReport() { return report.toString(); }
+
+    private void countSites(List<Instr> code) {
+        for (Instr in : code) {
+            if (in.op.equals("call")) sites.merge(in.a, 1, Integer::sum);
+        }
+    }
+
+    // --------- Grafo de llamadas ---------
+
+    private Set<String> callees(Proc p) {
+        Set<String> out = new LinkedHashSet<>();
+        for (Instr in : p.code.getInstrs()) {
+            if (in.op.equals("call") && byLabel.containsKey(in.a)) out.add(in.a);
+        }
+        return out;
+    }
+
+    private Set<String> recursiveProcs() {
+        Map<String, Set<String>> calls = new HashMap<>();
+        for (Proc p : byLabel.values()) calls.put(p.label, callees(p));
+        return inCycle(calls);
+    }
+
+    /**
+     * Nodos de calls (proc -> a quién llama) que están en un ciclo: las
+     * componentes fuertemente conexas de Tarjan con más de un nodo o con un
+     * nodo que se llama a sí mismo. Los destinos que no son claves se ignoran.
+     */
+    static Set<String> inCycle(Map<String, Set<String>> calls) {
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> low = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        Set<String> out = new HashSet<>();
+        int[] counter = { 0 };
+        for (String label : calls.keySet()) {
+            if (!index.containsKey(label)) tarjan(label, calls, index, low, stack, onStack, out, counter);
+        }
+        return out;
+    }
+
+    private static void tarjan(String v, Map<String, Set<String>> calls, Map<String, Integer> index,
+                               Map<String, Integer> low, Deque<String> stack, Set<String> onStack,
+                               Set<String> out, int[] counter) {
+        index.put(v, counter[0]);
+        low.put(v, counter[0]);
+        counter[0]++;
+        stack.push(v);
+        onStack.add(v);
+        Set<String> next = calls.get(v);
+        for (String w : next) {
+            if (!calls.containsKey(w)) continue;
+            if (!index.containsKey(w)) {
+                tarjan(w, calls, index, low, stack, onStack, out, counter);
+                low.put(v, Math.min(low.get(v), low.get(w)));
+            } else if (onStack.contains(w)) {
+                low.put(v, Math.min(low.get(v), index.get(w)));
+            }
+        }
+        if (low.get(v).equals(index.get(v))) {
+            List<String> scc = new ArrayList<>();
+            String w;
+            do {
+                w = stack.pop();
+                onStack.remove(w);
+                scc.add(w);
+            } while (!w.equals(v));
+            if (scc.size() > 1 || next.contains(v)) out.addAll(scc);
+        }
+    }
+
+    // Callees antes que callers
+    private List<String> postOrder() {
+        List<String> order = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String label : byLabel.keySet()) visit(label, seen, order);
+        return order;
+    }
+
+    private void visit(String v, Set<String> seen, List<String> order) {
+        if (!seen.add(v)) return;
+        for (String w : callees(byLabel.get(v))) visit(w, seen, order);
+        order.add(v);
+    }
+
+    // Procedimientos a los que aún se llama desde main o desde fuera (directa o indirectamente)
+    private List<Proc> reachable() {
+        Set<String> seen = new HashSet<>(exported);
+        Deque<String> work = new ArrayDeque<>(exported);
+        for (Instr in : main.getInstrs()) {
+            if (in.op.equals("call") && seen.add(in.a)) work.push(in.a);
+        }
+        while (!work.isEmpty()) {
+            Proc p = byLabel.get(work.pop());
+            if (p == null) continue;
+            for (String w : callees(p)) if (seen.add(w)) work.push(w);
+        }
+        List<Proc> out = new ArrayList<>();
+        for (Proc p : byLabel.values()) if (seen.contains(p.label)) out.add(p);
+        return out;
+    }
+
+    // --------- Inlining ---------
+
+    private void inlineInto(IRBuilder caller, String callerName, Set<String> recursive) {
+        List<Instr> code = caller.getInstrs();
+        int[] depth = loopDepth(code);
+        List<Instr> out = new ArrayList<>(code.size());
+        boolean changed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            Instr in = code.get(i);
+            Proc callee = in.op.equals("call") ? byLabel.get(in.a) : null;
+            if (callee == null) { out.add(in); continue; }
+
+            int size = callee.code.size() - 1; // sin el return
+            String why = null;
+            if (recursive.contains(callee.label)) why = "recursivo";
+            else if (growth + size - 1 > cfg.maxGrowth) why = "límite de crecimiento";
+            else if (size > cfg.maxSize + cfg.loopBonus * depth[i]
+                    && !(sites.get(callee.label) == 1 && !exported.contains(callee.label)
+                         && size <= cfg.singleCallMaxSize)) why = "demasiado grande";
+
+            if (why != null) {
+                out.add(in);
+                report.append(String.format("no inlinado %s -> %s (profundidad %d, tamaño %d): %s%n",
+                        callee.name, callerName, depth[i], size, why));
+                continue;
+            }
+            cloneBody(callee, caller, out);
+            growth += size - 1;
+            changed = true;
+            report.append(String.format("inlinado %s -> %s (profundidad %d, tamaño %d)%n",
+                    callee.name, callerName, depth[i], size));
+        }
+        if (changed) {
+            code.clear();
+            code.addAll(out);
+        }
+    }
+
+    /**
+     * Copia el cuerpo del callee con temporales y etiquetas nuevos. Si el
+     * return no es lo último (hay código frío detrás) se cambia por un salto
+     * al final de la copia.
+     */
+    private void cloneBody(Proc callee, IRBuilder caller, List<Instr> out) {
+        List<Instr> body = callee.code.getInstrs();
+        Map<String, String> rename = new HashMap<>();
+        for (Instr in : body) {
+            if (in.isLabel()) rename.put(in.a, caller.newLabel());
+        }
+        int last = body.size() - 1;
+        String Lret = body.get(last).op.equals("return") ? null : caller.newLabel();
+        for (int k = 0; k <= last; k++) {
+            Instr in = body.get(k);
+            if (in.op.equals("return")) {
+                if (Lret != null) out.add(new Instr("goto", Lret, null, null));
+                continue;
+            }
+            out.add(new Instr(in.op, fresh(in.a, rename, caller), fresh(in.b, rename, caller), fresh(in.c, rename, caller)));
+        }
+        if (Lret != null) out.add(new Instr("skip", Lret, null, null));
+    }
+
+    private String fresh(String s, Map<String, String> rename, IRBuilder caller) {
+        if (s == null) return null;
+        String r = rename.get(s);
+        if (r != null) return r;
+        if (Instr.isTemp(s, vars)) {
+            r = caller.newTemp();
+            rename.put(s, r);
+            return r;
+        }
+        return s;
+    }
+
+
+    /**
+     * Profundidad de bucle de cada instrucción: cada salto hacia atrás
+     * (a una etiqueta anterior) cierra un bucle entre la etiqueta y el salto.
+     * No cuentan los saltos desde el código frío que va tras un halt/return
+     * de vuelta a la función: eso no es un bucle.
+     */
+    static int[] loopDepth(List<Instr> code) {
+        Map<String, Integer> labelAt = new HashMap<>();
+        int[] region = new int[code.size()];
+        int r = 0;
+        for (int i = 0; i < code.size(); i++) {
+            Instr in = code.get(i);
+            region[i] = r;
+            if (in.isLabel()) labelAt.put(in.a, i);
+            if (in.op.equals("halt") || in.op.equals("return")) r++;
+        }
+        int[] diff = new int[code.size() + 1];
+        for (int j = 0; j < code.size(); j++) {
+            Instr in = code.get(j);
+            String target = in.op.equals("goto") ? in.a : (in.op.startsWith("if_") ? in.c : null);
+            Integer i = (target == null) ? null : labelAt.get(target);
+            if (i != null && i <= j && region[i] == region[j]) {
+                diff[i]++;
+                diff[j + 1]--;
+            }
+        }
+        int[] depth = new int[code.size()];
+        int d = 0;
+        for (int i = 0; i < code.size(); i++) {
+            d += diff[i];
+            depth[i] = d;
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,167 @@
+package ir;
+
+import util.OutputWriter;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Una instrucción de tres direcciones: op a b c.
+ * Las etiquetas son la pseudo-instrucción "skip L" (op = "skip", a = L).
+ */
+public class Instr {
+    public final String op;
+    public final String a;
+    public final String b;
+    public final String c;
+
+    public Instr(String op, String a, String b, String c) {
+        this.op = op;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    public boolean isLabel() { return op.equals("skip"); }
+
+    /** Escribe en c: copy y las operaciones (add, neg, not, ...). */
+    public boolean isDef() {
+        switch (op) {
+            case "copy": case "add": case "sub": case "prod": case "div": case "mod":
+            case "neg": case "not": case "and": case "or":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean isBranch() { return op.startsWith("if_"); }
+
+    /** a y b son valores (variables o constantes), no etiquetas ni contadores. */
+    public boolean readsOperands() {
+        return isDef() || isBranch() || op.equals("print");
+    }
+
+    /** Destino del salto (goto, if_) o null. */
+    public String jumpTarget() {
+        if (op.equals("goto")) return a;
+        if (isBranch()) return c;
+        return null;
+    }
+
+    /** Valor de un operando constante (número o literal char como 'a' o '\n'); null si es una variable. */
+    public static Integer constValue(String s) {
+        if (s == null || s.isEmpty()) return null;
+        char f = s.charAt(0);
+        if (f == '\'' && s.length() >= 3) {
+            char ch = s.charAt(1);
+            if (ch == '\\' && s.length() >= 4) {
+                char e = s.charAt(2);
+                ch = (e == 'n') ? '\n' : (e == 't') ? '\t' : e;
+            }
+            return (int) ch;
+        }
+        if ((f >= '0' && f <= '9') || (f == '-' && s.length() > 1)) return Integer.parseInt(s);
+        return null;
+    }
+
+    /**
+     * Resultado de una operación de dos operandos (add, sub, prod, div, mod,
+     * and, or) con enteros de 32 bits, como el Interpreter; null si no se
+     * puede calcular al compilar (división por cero).
+     */
+    public static Integer eval(String op, int x, int y) {
+        switch (op) {
+            case "add": return x + y;
+            case "sub": return x - y;
+            case "prod": return x * y;
+            case "div": return (y == 0) ? null : x / y;
+            case "mod": return (y == 0) ? null : x % y;
+            case "and": return x & y;
+            case "or": return x | y;
+            default: return null;
+        }
+    }
+
+    /** ¿Salta un if_ con estos valores? */
+    public static boolean test(String op, int x, int y) {
+        switch (op) {
+            case "if_EQ": return x == y;
+            case "if_NE": return x != y;
+            case "if_LT": return x < y;
+            case "if_LE": return x <= y;
+            case "if_GT": return x > y;
+            default: return x >= y; // if_GE
+        }
+    }
+
+    /** if_ con la condición contraria (if_LT -> if_GE...). */
+    public static String invert(String op) {
+        switch (op) {
+            case "if_EQ": return "if_NE";
+            case "if_NE": return "if_EQ";
+            case "if_LT": return "if_GE";
+            case "if_LE": return "if_GT";
+            case "if_GT": return "if_LE";
+            default: return "if_LT"; // if_GE
+        }
+    }
+
+    /** Variable (o temporal) leída/escrita por nombre: ni constante ni vacío. */
+    public static boolean isVar(String s) {
+        return s != null && constValue(s) == null;
+    }
+
+    /**
+     * ¿Es un temporal del generador (tN)? vars son los nombres del programa,
+     * por si alguien declara una variable llamada t1.
+     */
+    public static boolean isTemp(String s, Set<String> vars) {
+        if (s == null || s.length() < 2 || s.charAt(0) != 't' || vars.contains(s)) return false;
+        for (int i = 1; i < s.length(); i++) if (!Character.isDigit(s.charAt(i))) return false;
+        return true;
+    }
+
+    /** Etiqueta del generador (LN); las P_nombre son de procedimientos. */
+    public static boolean isLocalLabel(String s) {
+        if (s == null || s.length() < 2 || s.charAt(0) != 'L') return false;
+        for (int i = 1; i < s.length(); i++) if (!Character.isDigit(s.charAt(i))) return false;
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Instr)) return false;
+        Instr x = (Instr) o;
+        return op.equals(x.op) && Objects.equals(a, x.a) && Objects.equals(b, x.b) && Objects.equals(c, x.c);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(op, a, b, c);
+    }
+
+    @Override
+    public String toString() {
+        // mismo formato que intermediate.txt
+        if (isLabel()) return String.format("%-7s %-8s", op, a);
+        return String.format("%-7s %-8s %-8s %-8s",
+                op,
+                a == null ? "" : a,
+                b == null ? "" : b,
+                c == null ? "" : c);
+    }
+
+    // mismo texto que toString(), escrito directamente
+    public void writeTo(OutputWriter out) throws IOException {
+        out.pad(op, 7).write(' ');
+        if (isLabel()) {
+            out.pad(a, 8);
+            return;
+        }
+        out.pad(a == null ? "" : a, 8).write(' ');
+        out.pad(b == null ? "" : b, 8).write(' ');
+        out.pad(c == null ? "" : c, 8);
+    }
+}
@@ -0,0 +1,184 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ejecutor de referencia del IR.
+ *
+ * Antes de ejecutar se traduce cada instrucción a códigos enteros: los
+ * operandos pasan a ser huecos de memoria (variables y temporales) o
+ * constantes, y las etiquetas a índices de instrucción. Los enteros son de
+ * 32 bits y los bool valen -1 / 0, como en el código generado.
+ *
+ * "prof N" suma uno al contador N (ver Profile).
+ */
+public class Interpreter {
+
+    private static final String[] OPS = {
+        "copy", "add", "sub", "prod", "div", "mod", "neg", "not", "and", "or",
+        "if_EQ", "if_NE", "if_LT", "if_LE", "if_GT", "if_GE",
+        "goto", "print", "skip", "call", "return", "halt", "prof"
+    };
+    private static final int COPY = 0, ADD = 1, SUB = 2, PROD = 3, DIV = 4, MOD = 5, NEG = 6, NOT = 7,
+            AND = 8, OR = 9, IF_EQ = 10, IF_NE = 11, IF_LT = 12, IF_LE = 13, IF_GT = 14, IF_GE = 15,
+            GOTO = 16, PRINT = 17, SKIP = 18, CALL = 19, RETURN = 20, HALT = 21, PROF = 22;
+
+    private final int n;
+    private final int[] op;
+    // operandos: hueco de memoria (>= 0) o -1 si es constante (valor en *Const)
+    private final int[] a, b, c;
+    private final int[] aConst, bConst;
+    private final int[] target; // destino de saltos y calls
+    private final int slots;
+    private long[] counters = new long[0];
+    private long maxSteps = Long.MAX_VALUE;
+
+    public Interpreter(List<Instr> code) {
+        n = code.size();
+        op = new int[n];
+        a = new int[n];
+        b = new int[n];
+        c = new int[n];
+        aConst = new int[n];
+        bConst = new int[n];
+        target = new int[n];
+
+        Map<String, Integer> opCode = new HashMap<>();
+        for (int i = 0; i < OPS.length; i++) opCode.put(OPS[i], i);
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (code.get(i).isLabel()) labels.put(code.get(i).a, i);
+        }
+
+        Map<String, Integer> vars = new HashMap<>();
+        int maxCounter = -1;
+        for (int i = 0; i < n; i++) {
+            Instr in = code.get(i);
+            Integer o = opCode.get(in.op);
+            if (o == null) throw new IllegalArgumentException("Instrucción desconocida en " + i + ": " + in.op);
+            op[i] = o;
+            a[i] = b[i] = c[i] = -1;
+            switch (o) {
+                case GOTO:
+                case CALL:
+                    target[i] = label(labels, in.a, i);
+                    break;
+                case IF_EQ: case IF_NE: case IF_LT: case IF_LE: case IF_GT: case IF_GE:
+                    target[i] = label(labels, in.c, i);
+                    a[i] = operand(in.a, vars, aConst, i);
+                    b[i] = operand(in.b, vars, bConst, i);
+                    break;
+                case PROF:
+                    aConst[i] = Integer.parseInt(in.a);
+                    maxCounter = Math.max(maxCounter, aConst[i]);
+                    break;
+                case SKIP:
+                case RETURN:
+                case HALT:
+                    break;
+                default:
+                    a[i] = operand(in.a, vars, aConst, i);
+                    b[i] = operand(in.b, vars, bConst, i);
+                    c[i] = (in.c == null) ? -1 : slot(in.c, vars);
+            }
+        }
+        slots = vars.size();
+        counters = new long[maxCounter + 1];
+    }
+
+    private static int label(Map<String, Integer> labels, String l, int at) {
+        Integer i = labels.get(l);
+        if (i == null) throw new IllegalArgumentException("Etiqueta no definida en " + at + ": " + l);
+        return i;
+    }
+
+    private static int slot(String name, Map<String, Integer> vars) {
+        Integer s = vars.get(name);
+        if (s == null) {
+            s = vars.size();
+            vars.put(name, s);
+        }
+        return s;
+    }
+
+    // constantes (números, literales char) o nombres de variable
+    private static int operand(String s, Map<String, Integer> vars, int[] consts, int at) {
+        if (s == null) return -1;
+        Integer k = Instr.constValue(s);
+        if (k != null) {
+            consts[at] = k;
+            return -1;
+        }
+        return slot(s, vars);
+    }
+
+    /** Contadores de las instrucciones prof tras la última ejecución. */
+    public Profile getProfile() { return new Profile(counters.clone()); }
+
+    public boolean isInstrumented() { return counters.length > 0; }
+
+    /** Instrucciones como mucho por ejecución; al pasarse, run lanza IllegalStateException. */
+    public void setMaxSteps(long maxSteps) { this.maxSteps = maxSteps; }
+
+    /**
+     * Ejecuta desde la primera instrucción hasta el final, un halt o un
+     * return sin call pendiente. Los print van a out, uno por línea.
+     */
+    public void run(PrintStream out) {
+        int[] mem = new int[slots];
+        int[] stack = new int[16];
+        int sp = 0;
+        Arrays.fill(counters, 0);
+
+        int pc = 0;
+        long left = maxSteps;
+        while (pc < n) {
+            if (--left < 0) throw new IllegalStateException("No termina en " + maxSteps + " pasos");
+            int i = pc++;
+            int x = (a[i] >= 0) ? mem[a[i]] : aConst[i];
+            int y = (b[i] >= 0) ? mem[b[i]] : bConst[i];
+            switch (op[i]) {
+                case COPY: mem[c[i]] = x; break;
+                case ADD: mem[c[i]] = x + y; break;
+                case SUB: mem[c[i]] = x - y; break;
+                case PROD: mem[c[i]] = x * y; break;
+                case DIV:
+                    if (y == 0) throw new ArithmeticException("División por cero (instrucción " + i + ")");
+                    mem[c[i]] = x / y;
+                    break;
+                case MOD:
+                    if (y == 0) throw new ArithmeticException("División por cero (instrucción " + i + ")");
+                    mem[c[i]] = x % y;
+                    break;
+                case NEG: mem[c[i]] = -x; break;
+                case NOT: mem[c[i]] = ~x; break;
+                case AND: mem[c[i]] = x & y; break;
+                case OR: mem[c[i]] = x | y; break;
+                case IF_EQ: if (x == y) pc = target[i]; break;
+                case IF_NE: if (x != y) pc = target[i]; break;
+                case IF_LT: if (x < y) pc = target[i]; break;
+                case IF_LE: if (x <= y) pc = target[i]; break;
+                case IF_GT: if (x > y) pc = target[i]; break;
+                case IF_GE: if (x >= y) pc = target[i]; break;
+                case GOTO: pc = target[i]; break;
+                case PRINT: out.println(x); break;
+                case SKIP: break;
+                case CALL:
+                    if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                    stack[sp++] = pc;
+                    pc = target[i];
+                    break;
+                case RETURN:
+                    if (sp == 0) return;
+                    pc = stack[--sp];
+                    break;
+                case HALT: return;
+                case PROF: counters[aConst[i]]++; break;
+            }
+        }
+    }
+}
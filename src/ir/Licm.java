@@ -0,0 +1,214 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saca de los bucles las operaciones invariantes.
+ *
+ * Los bucles salen de las aristas de vuelta (b -> h con h dominando a b):
+ * el de h son los bloques desde los que se llega a b sin pasar por h. Una
+ * instrucción "op a b t" del bucle pasa a un bloque nuevo justo delante de
+ * h (el pre-encabezado, al que se redirigen las entradas desde fuera) si:
+ *  - t es un temporal que solo se escribe ahí y todas sus lecturas están
+ *    dominadas por ella (ninguna puede ver otro valor de t),
+ *  - no puede fallar (div/mod solo con divisor constante distinto de 0):
+ *    ahora se ejecuta aunque la vuelta no pase por ella,
+ *  - sus operandos son constantes, temporales calculados antes del bucle o
+ *    ya sacados, o variables que no se escriben en el bucle (y en el bucle
+ *    no hay call, que puede escribir cualquiera).
+ *
+ * Los bucles se tratan de fuera adentro: lo que es invariante en el de
+ * fuera sale del todo.
+ */
+public class Licm implements Pass {
+
+    // Un bucle natural: su encabezado y sus bloques (ids ordenados)
+    private static final class Loop {
+        final Cfg.Block header;
+        final int[] blocks;
+
+        Loop(Cfg.Block header, int[] blocks) {
+            this.header = header;
+            this.blocks = blocks;
+        }
+
+        boolean contains(int block) { return Arrays.binarySearch(blocks, block) >= 0; }
+    }
+
+    private List<Instr> code;
+    private Set<String> vars;
+    private Cfg cfg;
+    private Dominators dom;
+    private int[] blockOf;
+    private final Map<String, Integer> defAt = new HashMap<>();         // temporal -> su única escritura
+    private final Set<String> multi = new HashSet<>();                  // temporales escritos más de una vez
+    private final Map<String, List<Integer>> readsAt = new HashMap<>(); // temporal -> dónde se lee
+    private boolean[] hoisted;
+
+    @Override
+    public String name() { return "licm"; }
+
+    @Override
+    public Set<Analysis> requires() { return EnumSet.of(Analysis.CFG, Analysis.DOMINATORS); }
+
+    @Override
+    public boolean run(PassManager pm) {
+        code = pm.code();
+        vars = pm.vars();
+        cfg = pm.cfg();
+        dom = pm.dominators();
+        int n = code.size();
+        blockOf = new int[n];
+        for (Cfg.Block b : cfg.blocks) for (int i = b.start; i < b.end; i++) blockOf[i] = b.id;
+
+        defAt.clear();
+        multi.clear();
+        readsAt.clear();
+        for (int i = 0; i < n; i++) {
+            Instr in = code.get(i);
+            if (!in.readsOperands()) continue;
+            if (in.isDef() && Instr.isTemp(in.c, vars) && defAt.put(in.c, i) != null) multi.add(in.c);
+            for (String s : new String[] { in.a, in.b }) {
+                if (Instr.isTemp(s, vars)) readsAt.computeIfAbsent(s, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // bucles: las aristas de vuelta (b -> h con h dominando a b), juntando las que van al mismo h
+        Map<Integer, List<Cfg.Block>> tails = new HashMap<>();
+        for (Cfg.Block b : cfg.blocks) {
+            for (Cfg.Block h : b.succ) {
+                if (dom.dominates(h, b)) tails.computeIfAbsent(h.id, k -> new ArrayList<>()).add(b);
+            }
+        }
+        Map<Integer, Loop> loops = new HashMap<>();
+        int[] mark = new int[cfg.blocks.size()];
+        for (Map.Entry<Integer, List<Cfg.Block>> e : tails.entrySet()) {
+            Cfg.Block h = cfg.blocks.get(e.getKey());
+            loops.put(h.id, new Loop(h, body(h, e.getValue(), mark, loops.size() + 1)));
+        }
+        List<Loop> order = new ArrayList<>(loops.values());
+        order.sort((x, y) -> y.blocks.length - x.blocks.length); // de fuera adentro
+
+        hoisted = new boolean[n];
+        Map<Integer, List<Integer>> hoists = new HashMap<>();
+        for (Loop loop : order) {
+            Instr first = code.get(loop.header.start);
+            if (loop.header.entry || !first.isLabel() || !Instr.isLocalLabel(first.a)) continue;
+            List<Integer> out = invariants(loop);
+            if (!out.isEmpty()) hoists.put(loop.header.id, out);
+        }
+        if (hoists.isEmpty()) return false;
+
+        // código nuevo: [goto Lh] skip Lp <sacadas> skip Lh ...
+        Map<String, String> preheader = new HashMap<>(); // Lh -> Lp
+        for (int h : hoists.keySet()) preheader.put(code.get(cfg.blocks.get(h).start).a, pm.newLabel());
+        List<Instr> out = new ArrayList<>(n + 2 * hoists.size());
+        for (int i = 0; i < n; i++) {
+            Instr in = code.get(i);
+            List<Integer> moved = hoists.get(blockOf[i]);
+            if (moved != null && i == cfg.blocks.get(blockOf[i]).start) {
+                String lp = preheader.get(in.a);
+                // si se cae en el encabezado desde dentro del bucle, que siga yendo a él
+                if (i > 0 && fallsThrough(code.get(i - 1)) && loops.get(blockOf[i]).contains(blockOf[i - 1])) {
+                    out.add(new Instr("goto", in.a, null, null));
+                }
+                out.add(new Instr("skip", lp, null, null));
+                for (int k : moved) out.add(code.get(k));
+            }
+            if (hoisted[i]) continue;
+            String target = in.jumpTarget();
+            String lp = (target == null) ? null : preheader.get(target);
+            if (lp != null && !loops.get(cfg.labelBlock(target).id).contains(blockOf[i])) {
+                // entrada al bucle desde fuera: pasa por el pre-encabezado
+                in = in.op.equals("goto") ? new Instr("goto", lp, null, null) : new Instr(in.op, in.a, in.b, lp);
+            }
+            out.add(in);
+        }
+        code.clear();
+        code.addAll(out);
+        return true;
+    }
+
+    // Bloques desde los que se llega a alguno de tails sin pasar por header (marcados en mark con stamp)
+    private int[] body(Cfg.Block header, List<Cfg.Block> tails, int[] mark, int stamp) {
+        List<Integer> out = new ArrayList<>();
+        mark[header.id] = stamp;
+        out.add(header.id);
+        List<Cfg.Block> work = new ArrayList<>(tails);
+        while (!work.isEmpty()) {
+            Cfg.Block b = work.remove(work.size() - 1);
+            if (mark[b.id] == stamp) continue;
+            mark[b.id] = stamp;
+            out.add(b.id);
+            for (Cfg.Block p : b.pred) if (dom.isReachable(p)) work.add(p);
+        }
+        int[] ids = new int[out.size()];
+        for (int k = 0; k < ids.length; k++) ids[k] = out.get(k);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    // Instrucciones invariantes del bucle, en un orden en que se pueden ejecutar
+    private List<Integer> invariants(Loop loop) {
+        Set<String> written = new HashSet<>();
+        boolean calls = false;
+        for (int b : loop.blocks) {
+            Cfg.Block blk = cfg.blocks.get(b);
+            for (int i = blk.start; i < blk.end; i++) {
+                Instr in = code.get(i);
+                if (in.isDef()) written.add(in.c);
+                if (in.op.equals("call")) calls = true;
+            }
+        }
+
+        List<Integer> out = new ArrayList<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b : loop.blocks) {
+                Cfg.Block blk = cfg.blocks.get(b);
+                for (int i = blk.start; i < blk.end; i++) {
+                    if (hoisted[i] || !canHoist(i, loop, written, calls)) continue;
+                    hoisted[i] = true;
+                    out.add(i);
+                    changed = true;
+                }
+            }
+        }
+        return out;
+    }
+
+    private boolean canHoist(int i, Loop loop, Set<String> written, boolean calls) {
+        Instr in = code.get(i);
+        if (!in.isDef() || !Instr.isTemp(in.c, vars) || multi.contains(in.c) || DeadCode.mayFail(in)) return false;
+        if (!isInvariant(in.a, loop, written, calls) || !isInvariant(in.b, loop, written, calls)) {
+            return false;
+        }
+        Cfg.Block def = cfg.blocks.get(blockOf[i]);
+        for (int r : readsAt.getOrDefault(in.c, new ArrayList<>())) {
+            boolean seen = (blockOf[r] == def.id) ? r > i : dom.dominates(def, cfg.blocks.get(blockOf[r]));
+            if (!seen) return false;
+        }
+        return true;
+    }
+
+    private boolean isInvariant(String s, Loop loop, Set<String> written, boolean calls) {
+        if (s == null || Instr.constValue(s) != null) return true;
+        if (!Instr.isTemp(s, vars)) return !calls && !written.contains(s);
+        Integer d = defAt.get(s);
+        if (d == null || multi.contains(s)) return false;
+        if (hoisted[d]) return true; // ya sale antes de este bucle (o de uno que lo contiene)
+        return !loop.contains(blockOf[d]) && dom.dominates(cfg.blocks.get(blockOf[d]), loop.header);
+    }
+
+    private static boolean fallsThrough(Instr in) {
+        return !in.op.equals("goto") && !in.op.equals("halt") && !in.op.equals("return");
+    }
+}
@@ -0,0 +1,140 @@
+package ir;
+
+import sem.Export;
+import sem.SymbolTable;
+import sem.Type;
+
+import java.util.*;
+
+/**
+ * Enlaza unidades de compilación en un único programa.
+ *
+ * Cada unidad es [main][halt][código frío y procedimientos] (o solo [main]).
+ * El programa enlazado ejecuta los main de todas en el orden dado, uno tras
+ * otro, y detrás de un único halt pone el resto de cada unidad:
+ *
+ *     main1 main2 ... halt resto1 resto2 ...
+ *
+ * Temporales (tN) y etiquetas (LN) son locales a cada unidad y se
+ * renumeran sumándoles los contadores de las unidades anteriores. Las
+ * etiquetas de procedimiento (P_nombre) y las variables globales son
+ * comunes: una llamada a P_f de una unidad va al P_f de la que lo define.
+ */
+public class Linker {
+
+    private final List<Unit> units;
+    private final List<String> errors = new ArrayList<>();
+    private final List<SymbolTable.Entry> symbols = new ArrayList<>();
+
+    public Linker(List<Unit> units) {
+        this.units = units;
+    }
+
+    /** Errores de enlace: símbolos definidos en dos unidades, llamadas sin definir, recursión. */
+    public List<String> getErrors() { return errors; }
+
+    /** Tabla de símbolos del programa: las de todas las unidades, en orden. */
+    public List<SymbolTable.Entry> getSymbols() { return symbols; }
+
+    /** Programa enlazado (aunque haya errores; entonces no se debe usar). */
+    public IRBuilder link() {
+        checkExports();
+
+        Set<String> vars = new HashSet<>();
+        for (Unit u : units) {
+            for (SymbolTable.Entry e : u.symbols) vars.add(e.name);
+            symbols.addAll(u.symbols);
+        }
+
+        IRBuilder out = new IRBuilder();
+        List<Instr> code = out.getInstrs();
+        List<List<Instr>> rests = new ArrayList<>();
+        Set<String> defined = new HashSet<>();
+        int temps = 0, labels = 0;
+        for (Unit u : units) {
+            List<Instr> relocated = relocate(u.code.getInstrs(), temps, labels, vars);
+            temps += u.code.getTempCount();
+            labels += u.code.getLabelCount();
+            int halt = 0;
+            while (halt < relocated.size() && !relocated.get(halt).op.equals("halt")) halt++;
+            code.addAll(relocated.subList(0, halt));
+            if (halt < relocated.size()) rests.add(relocated.subList(halt + 1, relocated.size()));
+            for (Instr in : relocated) if (in.isLabel()) defined.add(in.a);
+        }
+        if (!rests.isEmpty()) {
+            out.emit("halt", null, null, null);
+            for (List<Instr> r : rests) code.addAll(r);
+        }
+        out.setCounters(temps, labels);
+
+        Set<String> missing = new TreeSet<>();
+        for (Instr in : code) {
+            if (in.op.equals("call") && !defined.contains(in.a)) missing.add(in.a);
+        }
+        for (String m : missing) errors.add("Procedimiento sin definir en ninguna unidad: " + m.substring(2));
+        checkRecursion(rests);
+        return out;
+    }
+
+    /**
+     * Cada unidad rechaza que un proc se llame a sí mismo, pero con imports
+     * dos unidades pueden llamarse en ciclo (f de A llama a g de B y g a f).
+     * Los parámetros y locales son estáticos, así que tampoco se admite.
+     */
+    private void checkRecursion(List<List<Instr>> rests) {
+        Map<String, Set<String>> calls = new HashMap<>();
+        for (List<Instr> r : rests) {
+            Set<String> current = null; // antes del primer P_ va el código frío de main
+            for (Instr in : r) {
+                if (in.isLabel() && in.a.startsWith("P_")) {
+                    current = new HashSet<>();
+                    calls.put(in.a, current);
+                } else if (current != null && in.op.equals("call")) {
+                    current.add(in.a);
+                }
+            }
+        }
+        Set<String> names = new TreeSet<>();
+        for (String label : Inliner.inCycle(calls)) names.add(label.substring(2));
+        if (!names.isEmpty()) errors.add("Procedimientos recursivos entre unidades: " + String.join(", ", names));
+    }
+
+    // Cada nombre global (variable o proc) solo lo puede definir una unidad
+    private void checkExports() {
+        Map<String, String> owner = new HashMap<>();
+        for (Unit u : units) {
+            for (String text : u.exports) {
+                Export e = Export.parse(text);
+                String prev = owner.putIfAbsent(e.name, u.name);
+                if (prev != null) {
+                    errors.add(String.format("%s '%s' definido en %s y en %s",
+                            e.type == Type.PROC ? "Procedimiento" : "Variable", e.name, prev, u.name));
+                }
+            }
+        }
+    }
+
+    // Copia con tN -> t(N+temps) y LN -> L(N+labels)
+    private static List<Instr> relocate(List<Instr> code, int temps, int labels, Set<String> vars) {
+        List<Instr> out = new ArrayList<>(code.size());
+        for (Instr in : code) {
+            String a = in.a, b = in.b, c = in.c;
+            if (in.isLabel() || in.op.equals("goto")) a = label(a, labels);
+            else a = temp(a, temps, vars);
+            b = temp(b, temps, vars);
+            c = in.isBranch() ? label(c, labels) : temp(c, temps, vars);
+            out.add(new Instr(in.op, a, b, c));
+        }
+        return out;
+    }
+
+    private static String temp(String s, int base, Set<String> vars) {
+        if (base == 0 || !Instr.isTemp(s, vars)) return s;
+        return "t" + (Integer.parseInt(s.substring(1)) + base);
+    }
+
+    private static String label(String s, int base) {
+        if (base == 0 || !s.startsWith("L")) return s; // P_nombre es global
+        return "L" + (Integer.parseInt(s.substring(1)) + base);
+    }
+}
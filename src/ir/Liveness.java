@@ -0,0 +1,114 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Variables vivas a la salida de cada bloque (análisis hacia atrás).
+ *
+ * Las variables del programa siguen vivas en un return (las puede leer
+ * quien llamó) y un call las lee todas. En un halt o al final de main no
+ * queda nada vivo: lo único observable es lo que se imprime.
+ */
+public class Liveness {
+
+    private final Cfg cfg;
+    private final Set<String> globals = new HashSet<>();
+    private final List<Set<String>> liveOut = new ArrayList<>();
+
+    public Liveness(Cfg cfg, Set<String> vars) {
+        this.cfg = cfg;
+        for (Instr in : cfg.code) {
+            if (!in.readsOperands()) continue;
+            for (String s : new String[] { in.a, in.b, in.isDef() ? in.c : null }) {
+                if (Instr.isVar(s) && !Instr.isTemp(s, vars)) globals.add(s);
+            }
+        }
+
+        // lo que cada bloque lee antes de escribirlo (use) y lo que escribe (def)
+        int nb = cfg.blocks.size();
+        List<Set<String>> use = new ArrayList<>(nb), def = new ArrayList<>(nb);
+        for (Cfg.Block b : cfg.blocks) {
+            Set<String> u = new HashSet<>(), d = new HashSet<>();
+            for (int i = b.end - 1; i >= b.start; i--) {
+                Instr in = cfg.code.get(i);
+                step(in, u);
+                if (in.isDef()) d.add(in.c);
+            }
+            use.add(compact(u));
+            def.add(compact(d));
+        }
+
+        // in = use + (out - def), con lista de trabajo: solo se revisa un bloque si cambia un sucesor.
+        // Casi todos los conjuntos son vacíos o pequeños: los vacíos se comparten y
+        // liveIn empieza siendo el propio use (se copia al añadirle algo).
+        List<Set<String>> liveIn = new ArrayList<>(use);
+        boolean[] ownIn = new boolean[nb];
+        for (int k = 0; k < nb; k++) liveOut.add(EMPTY);
+        ArrayDeque<Cfg.Block> work = new ArrayDeque<>();
+        boolean[] queued = new boolean[nb];
+        for (int k = nb - 1; k >= 0; k--) {
+            work.add(cfg.blocks.get(k));
+            queued[k] = true;
+        }
+        while (!work.isEmpty()) {
+            Cfg.Block b = work.poll();
+            queued[b.id] = false;
+            Set<String> out = liveOut.get(b.id);
+            for (Cfg.Block s : b.succ) {
+                Set<String> sin = liveIn.get(s.id);
+                if (sin.isEmpty() || out.containsAll(sin)) continue;
+                if (out == EMPTY) out = new HashSet<>();
+                out.addAll(sin);
+            }
+            liveOut.set(b.id, out);
+            Set<String> d = def.get(b.id);
+            boolean changed = false;
+            for (String v : out) {
+                if (d.contains(v) || liveIn.get(b.id).contains(v)) continue;
+                if (!ownIn[b.id]) {
+                    liveIn.set(b.id, new HashSet<>(liveIn.get(b.id)));
+                    ownIn[b.id] = true;
+                }
+                liveIn.get(b.id).add(v);
+                changed = true;
+            }
+            if (!changed) continue;
+            for (Cfg.Block p : b.pred) {
+                if (!queued[p.id]) {
+                    queued[p.id] = true;
+                    work.add(p);
+                }
+            }
+        }
+    }
+
+    private static final Set<String> EMPTY = Collections.emptySet();
+
+    private static Set<String> compact(Set<String> s) {
+        return s.isEmpty() ? EMPTY : s;
+    }
+
+    /** Vivas a la salida de b (no se debe modificar). */
+    public Set<String> liveOut(Cfg.Block b) { return liveOut.get(b.id); }
+
+    /** Paso hacia atrás: live pasa de "vivas detrás de in" a "vivas delante de in". */
+    public void step(Instr in, Set<String> live) {
+        switch (in.op) {
+            case "call":
+            case "return":
+                live.addAll(globals);
+                return;
+            default:
+                break;
+        }
+        if (!in.readsOperands()) return;
+        if (in.isDef()) live.remove(in.c);
+        if (Instr.isVar(in.a)) live.add(in.a);
+        if (Instr.isVar(in.b)) live.add(in.b);
+    }
+}
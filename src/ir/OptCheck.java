@@ -0,0 +1,121 @@
+package ir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * --check-opt: prueba diferencial de -O. Se ejecuta (Interpreter) el código
+ * sin optimizar, el optimizado y, para cada regla de la mirilla, el que
+ * sale de aplicar solo esa regla (al original y a lo que dejan las demás
+ * reglas); todos tienen que escribir lo mismo y acabar igual (bien o con
+ * división por cero).
+ *
+ * Si el programa sin optimizar no acaba en MAX_STEPS instrucciones no se
+ * puede comparar y no se comprueba nada.
+ */
+public class OptCheck {
+
+    public static final long MAX_STEPS = 50_000_000L;
+
+    private final List<Instr> original;
+    private final Set<String> vars;
+    private final StringBuilder report = new StringBuilder();
+    private final Map<String, Long> hits = new HashMap<>();
+    private final List<String> different = new ArrayList<>();
+    private boolean ok = true, checked;
+
+    /** original: el código antes de optimizar (se copia). */
+    public OptCheck(List<Instr> original, Set<String> vars) {
+        this.original = new ArrayList<>(original);
+        this.vars = vars;
+    }
+
+    /** false si alguna versión se comporta distinto que el original. */
+    public boolean isOk() { return ok; }
+
+    /** false si el original no terminaba y no se pudo comparar nada. */
+    public boolean isChecked() { return checked; }
+
+    /** Veces que se aplicó la regla en la última comprobación (0 si no se comprobó). */
+    public long getHits(String rule) { return hits.getOrDefault(rule, 0L); }
+
+    /** Lo que se comportó distinto en la última comprobación: "-O" y nombres de reglas. */
+    public List<String> getDifferent() { return different; }
+
+    /** Compara original con optimized y con cada regla por separado; devuelve el informe. */
+    public String check(List<Instr> optimized) {
+        report.setLength(0);
+        hits.clear();
+        different.clear();
+        report.append("CHECK-OPT REPORT\n");
+        report.append("--------------------------------\n");
+        String expected = execute(original);
+        if (expected == null) {
+            report.append(String.format("no comprobado: sin optimizar no termina en %d pasos%n", MAX_STEPS));
+            return report.toString();
+        }
+        checked = true;
+        compare("-O", "-O", original.size(), optimized, expected);
+        for (String rule : Peephole.ruleNames()) {
+            List<Instr> code = new ArrayList<>(original);
+            Peephole p = new Peephole(vars, rule);
+            p.run(code);
+            long alone = p.getHits(rule);
+            if (alone > 0) compare(rule, rule + " x" + alone, original.size(), code, expected);
+
+            // Muchas reglas solo tienen dónde aplicarse cuando han pasado otras
+            // (plegar tras propagar constantes...): también se prueba cada una
+            // sobre lo que dejan las demás, si eso aún hace lo mismo (si no, el
+            // fallo es de otra regla y ya sale en la suya)
+            List<Instr> rest = new ArrayList<>(original);
+            Peephole.allBut(vars, rule).run(rest);
+            List<Instr> simplified = new ArrayList<>(rest);
+            Peephole q = new Peephole(vars, rule);
+            q.run(rest);
+            long after = q.getHits(rule);
+            if (after > 0) {
+                if (expected.equals(execute(simplified))) {
+                    compare(rule, rule + " tras las demás x" + after, simplified.size(), rest, expected);
+                } else {
+                    report.append(String.format("%-22s tras las demás: sin probar (las demás ya cambian el resultado)%n", rule));
+                }
+            }
+
+            hits.put(rule, alone + after);
+            if (alone + after == 0) report.append(String.format("%-22s sin aplicaciones%n", rule));
+        }
+        report.append(ok ? "OK\n" : "DIFERENCIAS\n");
+        return report.toString();
+    }
+
+    private void compare(String name, String what, int before, List<Instr> code, String expected) {
+        String got = execute(code);
+        boolean same = expected.equals(got);
+        ok &= same;
+        if (!same && !different.contains(name)) different.add(name);
+        report.append(String.format("%-22s %6d -> %6d instrucciones  %s%n", what, before, code.size(),
+                same ? "igual" : (got == null ? "DISTINTO (no termina)" : "DISTINTO")));
+    }
+
+    // Salida y forma de acabar; null si no acaba en MAX_STEPS
+    private static String execute(List<Instr> code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String end = "fin";
+        try (PrintStream out = new PrintStream(bytes)) {
+            Interpreter it = new Interpreter(code);
+            it.setMaxSteps(MAX_STEPS);
+            it.run(out);
+        } catch (IllegalStateException ex) {
+            return null;
+        } catch (ArithmeticException | IllegalArgumentException ex) {
+            // el mensaje lleva el número de instrucción, que cambia al optimizar
+            end = ex.getClass().getSimpleName();
+        }
+        return bytes.toString() + "#" + end; // solo números: da igual la codificación
+    }
+}
@@ -0,0 +1,40 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Las optimizaciones de cada nivel, sobre el IR ya enlazado (main +
+ * procedimientos):
+ *  -O1  mirilla (Peephole) y código muerto (DeadCode): recorridos casi
+ *       lineales, para programas grandes,
+ *  -O2  además constantes (Sccp), copias (CopyProp) e invariantes de
+ *       bucles (Licm).
+ * Las pasadas se repiten en vueltas hasta que ninguna cambia nada (ver
+ * PassManager).
+ */
+public final class Optimizer {
+
+    private static final int MAX_ROUNDS = 10;
+
+    /** Nivel de -O sin número. */
+    public static final int MAX_LEVEL = 2;
+
+    private Optimizer() { }
+
+    /** vars: nombres de variables del programa (para no confundirlas con temporales). */
+    public static PassManager pipeline(int level, IRBuilder ir, Set<String> vars) {
+        List<Pass> passes = new ArrayList<>();
+        if (level >= 1) passes.add(new Peephole(vars));
+        if (level >= 2) {
+            passes.add(new Sccp());
+            passes.add(new CopyProp());
+        }
+        if (level >= 1) passes.add(new DeadCode());
+        if (level >= 2) passes.add(new Licm());
+        PassManager pm = new PassManager(ir, vars, MAX_ROUNDS, passes);
+        pm.setTitle("-O" + level);
+        return pm;
+    }
+}
@@ -0,0 +1,31 @@
+package ir;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Una pasada de optimización para el PassManager.
+ *
+ * requires(): análisis que usa; el PassManager los tiene calculados (o
+ * guardados de antes) al llamar a run, y la pasada los pide con pm.cfg(),
+ * pm.liveness()... preserves(): los que siguen valiendo después de run
+ * aunque haya cambiado el código; los demás se tiran.
+ */
+public interface Pass {
+
+    String name();
+
+    default Set<Analysis> requires() { return EnumSet.noneOf(Analysis.class); }
+
+    default Set<Analysis> preserves() { return EnumSet.noneOf(Analysis.class); }
+
+    /**
+     * Hace la pasada sobre pm.code(); true si ha cambiado algo. Una pasada
+     * que cambia el código varias veces y entre medias vuelve a pedir
+     * análisis tiene que avisar con pm.changed(...) tras cada cambio.
+     */
+    boolean run(PassManager pm);
+
+    /** Informe propio de la pasada (o null). */
+    default String getReport() { return null; }
+}
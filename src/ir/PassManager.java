@@ -0,0 +1,194 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ejecuta una lista de pasadas (Pass) sobre el IR, en vueltas hasta que
+ * ninguna cambia nada (como mucho maxRounds). Una pasada no se repite si
+ * nadie ha cambiado el código desde que acabó la última vez (cada una ya
+ * llega a su punto fijo).
+ *
+ * Los análisis (Analysis) se calculan la primera vez que una pasada los
+ * necesita y se guardan: la siguiente que los pida los reutiliza si desde
+ * entonces nadie ha cambiado el código, o si quien lo cambió declara que
+ * los conserva (Pass.preserves()).
+ *
+ * De cada pasada se apunta cuántas veces se ha ejecutado, cuántas ha
+ * cambiado algo, el tiempo y cuántas instrucciones ha quitado o puesto;
+ * de cada análisis, cuántas veces se ha calculado y reutilizado (getReport()).
+ */
+public class PassManager {
+
+    private final IRBuilder ir;
+    private final List<Instr> code;
+    private final Set<String> vars;
+    private final int maxRounds;
+    private final List<Pass> passes = new ArrayList<>();
+    private String title = "";
+
+    // análisis guardados (null = hay que calcularlo)
+    private Cfg cfg;
+    private Liveness liveness;
+    private Dominators dominators;
+    private long version; // cambios avisados con changed()
+
+    // estadísticas
+    private final long[] doneAt; // version al acabar cada pasada por última vez (-1: nunca)
+    private final int[] runs, changes, delta;
+    private final long[] passNanos;
+    private final int[] built = new int[Analysis.values().length];
+    private final int[] reused = new int[Analysis.values().length];
+    private final long[] analysisNanos = new long[Analysis.values().length];
+    private int rounds, before;
+    private long totalNanos;
+
+    /** vars: nombres de variables del programa (para no confundirlas con temporales). */
+    public PassManager(IRBuilder ir, Set<String> vars, int maxRounds, List<Pass> passes) {
+        this.ir = ir;
+        this.code = ir.getInstrs();
+        this.vars = vars;
+        this.maxRounds = maxRounds;
+        this.passes.addAll(passes);
+        doneAt = new long[passes.size()];
+        Arrays.fill(doneAt, -1);
+        runs = new int[passes.size()];
+        changes = new int[passes.size()];
+        delta = new int[passes.size()];
+        passNanos = new long[passes.size()];
+    }
+
+    /** Título del informe (p.ej. "-O2"). */
+    public void setTitle(String title) { this.title = title; }
+
+    public List<Instr> code() { return code; }
+
+    public Set<String> vars() { return vars; }
+
+    /** Etiqueta nueva (no choca con las que ya hay en el programa). */
+    public String newLabel() { return ir.newLabel(); }
+
+    /** Ejecuta las pasadas; true si alguna ha cambiado algo. */
+    public boolean run() {
+        long start = System.nanoTime();
+        before = code.size();
+        boolean any = false;
+        while (rounds < maxRounds) {
+            rounds++;
+            boolean changed = false;
+            for (int k = 0; k < passes.size(); k++) {
+                if (doneAt[k] == version) continue;
+                changed |= runPass(k);
+                doneAt[k] = version;
+            }
+            if (!changed) break;
+            any = true;
+        }
+        totalNanos += System.nanoTime() - start;
+        return any;
+    }
+
+    private boolean runPass(int k) {
+        Pass p = passes.get(k);
+        for (Analysis a : p.requires()) {
+            if (isCached(a)) reused[a.ordinal()]++;
+            else get(a);
+        }
+        int size = code.size();
+        long v = version;
+        long t0 = System.nanoTime();
+        boolean changed = p.run(this);
+        passNanos[k] += System.nanoTime() - t0;
+        runs[k]++;
+        delta[k] += code.size() - size;
+        if (changed) {
+            changes[k]++;
+            if (version == v) changed(p.preserves()); // si no ha avisado ella
+        }
+        return changed;
+    }
+
+    /**
+     * El código ha cambiado: se tiran los análisis guardados salvo los de
+     * preserved (y los que dependen del CFG si no se conserva).
+     */
+    public void changed(Set<Analysis> preserved) {
+        version++;
+        if (!preserved.contains(Analysis.CFG)) {
+            cfg = null;
+            liveness = null;
+            dominators = null;
+            return;
+        }
+        if (!preserved.contains(Analysis.LIVENESS)) liveness = null;
+        if (!preserved.contains(Analysis.DOMINATORS)) dominators = null;
+    }
+
+    /** Lo mismo que changed sin conservar nada. */
+    public void changed() {
+        changed(EnumSet.noneOf(Analysis.class));
+    }
+
+    public Cfg cfg() {
+        if (cfg == null) get(Analysis.CFG);
+        return cfg;
+    }
+
+    public Liveness liveness() {
+        if (liveness == null) get(Analysis.LIVENESS);
+        return liveness;
+    }
+
+    public Dominators dominators() {
+        if (dominators == null) get(Analysis.DOMINATORS);
+        return dominators;
+    }
+
+    private boolean isCached(Analysis a) {
+        switch (a) {
+            case CFG: return cfg != null;
+            case LIVENESS: return liveness != null;
+            default: return dominators != null;
+        }
+    }
+
+    // Calcula el análisis (y el CFG antes si hace falta)
+    private void get(Analysis a) {
+        Cfg g = (a == Analysis.CFG) ? null : cfg();
+        long t0 = System.nanoTime();
+        switch (a) {
+            case CFG: cfg = new Cfg(code); break;
+            case LIVENESS: liveness = new Liveness(g, vars); break;
+            default: dominators = new Dominators(g); break;
+        }
+        analysisNanos[a.ordinal()] += System.nanoTime() - t0;
+        built[a.ordinal()]++;
+    }
+
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PASS REPORT ").append(title).append('\n');
+        sb.append("--------------------------------\n");
+        sb.append(String.format("%-14s %6s %8s %10s %14s%n", "pasada", "veces", "cambios", "ms", "instrucciones"));
+        for (int k = 0; k < passes.size(); k++) {
+            sb.append(String.format("%-14s %6d %8d %10.1f %+14d%n", passes.get(k).name(), runs[k], changes[k],
+                    passNanos[k] / 1e6, delta[k]));
+        }
+        sb.append(String.format("%n%-14s %6s %12s %10s%n", "análisis", "hechos", "reutilizados", "ms"));
+        for (Analysis a : Analysis.values()) {
+            int i = a.ordinal();
+            sb.append(String.format("%-14s %6d %12d %10.1f%n", a.name().toLowerCase(), built[i], reused[i],
+                    analysisNanos[i] / 1e6));
+        }
+        sb.append(String.format("%n%d vueltas, %d ms; instrucciones: antes %d, después %d (%+d)%n",
+                rounds, totalNanos / 1_000_000, before, code.size(), code.size() - before));
+        for (Pass p : passes) {
+            String r = p.getReport();
+            if (r != null) sb.append('\n').append(r);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,509 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimizador de mirilla: una tabla de reglas (RULES), cada una mira una
+ * ventana corta de instrucciones seguidas y, si encaja, la sustituye por
+ * otra más corta o más barata. Se recorre el código probando todas las
+ * reglas en cada posición, y se repite hasta que ninguna cambia nada.
+ *
+ * Las reglas solo miran líneas rectas (una etiqueta corta la ventana) y se
+ * fían de cuántas veces se lee cada temporal y cuántos saltos van a cada
+ * etiqueta, que se llevan al día con cada cambio. Los temporales del
+ * generador tienen una sola lectura casi siempre: si es la de la ventana,
+ * el valor no se usa en ningún otro sitio.
+ *
+ * Cada regla cuenta cuántas veces se ha aplicado (getReport()).
+ */
+public class Peephole implements Pass {
+
+    // Una regla: mira la ventana que empieza en i y, si encaja, la reescribe
+    private interface Rewrite {
+        boolean apply(Peephole p, int i);
+    }
+
+    private static final class Rule {
+        final String name;
+        final String doc;
+        final String[] ops; // op de la primera instrucción de la ventana
+        final Rewrite rewrite;
+
+        Rule(String name, String doc, String ops, Rewrite rewrite) {
+            this.name = name;
+            this.doc = doc;
+            this.ops = ops.split(" ");
+            this.rewrite = rewrite;
+        }
+    }
+
+    private static final String OPS2 = "add sub prod div mod and or";
+    private static final String DEFS = "copy neg not " + OPS2;
+    private static final String IFS = "if_EQ if_NE if_LT if_LE if_GT if_GE";
+
+    private static final Rule[] RULES = {
+        new Rule("plegado-constantes", "op K1 K2 t -> copy K t; if_ K1 K2 L -> goto L / nada",
+                "neg not " + OPS2 + " " + IFS, Peephole::fold),
+        new Rule("identidad-algebraica", "add x 0, prod x 1, prod x 0, sub x x, and x -1, or x 0... -> copy/neg",
+                "copy " + OPS2, Peephole::algebraic),
+        new Rule("constante-a-uso", "copy K t; ...; op t y u -> op K y u",
+                "copy", Peephole::constantToUse),
+        new Rule("copia-tras-calculo", "op a b t; copy t x -> op a b x",
+                DEFS, Peephole::copyAfterCompute),
+        new Rule("neg-neg", "neg a t; neg t u -> copy a u",
+                "neg", (p, i) -> p.unaryTwice(i, "neg")),
+        new Rule("not-not", "not a t; not t u -> copy a u",
+                "not", (p, i) -> p.unaryTwice(i, "not")),
+        new Rule("not-de-comparacion", "comparación a t; not t u -> comparación (al revés) a u",
+                IFS, (p, i) -> p.compareInto(i, "not")),
+        new Rule("copia-de-comparacion", "comparación a t; copy t x -> comparación a x",
+                IFS, (p, i) -> p.compareInto(i, "copy")),
+        new Rule("if-de-comparacion", "comparación a t; if_EQ t 0 L -> if_ (contrario) L",
+                IFS, Peephole::branchOnCompare),
+        new Rule("salto-a-siguiente", "goto L; skip L -> skip L (y los if_)",
+                "goto " + IFS, Peephole::jumpToNext),
+        new Rule("codigo-inalcanzable", "goto/halt/return; op ... -> quita op",
+                "goto halt return", Peephole::unreachable),
+        new Rule("etiqueta-muerta", "skip LN sin saltos a ella -> nada",
+                "skip", Peephole::deadLabel),
+        new Rule("temporal-muerto", "op a b t (t no se lee) -> nada",
+                DEFS, Peephole::deadTemp),
+    };
+
+    // op -> reglas que empiezan por él, en el orden de RULES
+    private static final Map<String, int[]> BY_OP = new HashMap<>();
+    static {
+        Map<String, List<Integer>> lists = new HashMap<>();
+        for (int r = 0; r < RULES.length; r++) {
+            for (String op : RULES[r].ops) lists.computeIfAbsent(op, k -> new ArrayList<>()).add(r);
+        }
+        for (Map.Entry<String, List<Integer>> e : lists.entrySet()) {
+            int[] rs = new int[e.getValue().size()];
+            for (int k = 0; k < rs.length; k++) rs[k] = e.getValue().get(k);
+            BY_OP.put(e.getKey(), rs);
+        }
+    }
+
+    // Instrucciones como mucho entre un copy K t y la lectura de t
+    private static final int LOOKAHEAD = 4;
+    // Tras un cambio se vuelve atrás hasta esto para ver ventanas que ahora encajen
+    private static final int BACKTRACK = 6;
+
+    private final Set<String> vars;
+    private final boolean[] enabled = new boolean[RULES.length];
+    private final long[] hits = new long[RULES.length];
+    private int sweeps;
+
+    // Código de la pasada en curso: null = instrucción quitada
+    private Instr[] code;
+    private int n;
+    private final Map<String, Integer> reads = new HashMap<>(); // lecturas de cada temporal
+    private final Map<String, Integer> refs = new HashMap<>();  // saltos/calls a cada etiqueta
+
+    /** vars: nombres de variables del programa (para no confundirlas con temporales). */
+    public Peephole(Set<String> vars) {
+        this.vars = vars;
+        for (int r = 0; r < RULES.length; r++) enabled[r] = true;
+    }
+
+    /** Solo con una regla (para comprobarlas una a una, ver OptCheck). */
+    public Peephole(Set<String> vars, String rule) {
+        this.vars = vars;
+        int r = ruleIndex(rule);
+        if (r < 0) throw new IllegalArgumentException("Regla desconocida: " + rule);
+        enabled[r] = true;
+    }
+
+    /** Todas las reglas menos una (ver OptCheck). */
+    public static Peephole allBut(Set<String> vars, String rule) {
+        Peephole p = new Peephole(vars);
+        int r = ruleIndex(rule);
+        if (r < 0) throw new IllegalArgumentException("Regla desconocida: " + rule);
+        p.enabled[r] = false;
+        return p;
+    }
+
+    public static List<String> ruleNames() {
+        List<String> names = new ArrayList<>();
+        for (Rule r : RULES) names.add(r.name);
+        return names;
+    }
+
+    private static int ruleIndex(String name) {
+        for (int r = 0; r < RULES.length; r++) if (RULES[r].name.equals(name)) return r;
+        return -1;
+    }
+
+    /** Veces que se ha aplicado la regla (sumando todas las llamadas a run). */
+    public long getHits(String rule) {
+        return hits[ruleIndex(rule)];
+    }
+
+    @Override
+    public String name() { return "peephole"; }
+
+    @Override
+    public boolean run(PassManager pm) {
+        return run(pm.code());
+    }
+
+    /**
+     * Aplica las reglas sobre list hasta que ninguna encaja; true si ha
+     * cambiado algo.
+     */
+    public boolean run(List<Instr> list) {
+        code = list.toArray(new Instr[0]);
+        n = code.length;
+        diamondAt = -1;
+        reads.clear();
+        refs.clear();
+        for (Instr in : code) count(in, 1);
+
+        boolean any = false;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            sweeps++;
+            int i = next(-1);
+            while (i < n) {
+                if (!rewrite(i)) {
+                    i = next(i);
+                    continue;
+                }
+                changed = true;
+                // la ventana nueva puede completar otra que empieza un poco antes
+                int back = i;
+                for (int k = 0; k < BACKTRACK && back > 0; k++) back = prev(back);
+                i = (back < n && code[back] != null) ? back : next(back);
+            }
+            any |= changed;
+        }
+
+        if (any) {
+            list.clear();
+            for (Instr in : code) if (in != null) list.add(in);
+        }
+        code = null;
+        return any;
+    }
+
+    private boolean rewrite(int i) {
+        int[] rs = BY_OP.get(code[i].op);
+        if (rs == null) return false;
+        for (int r : rs) {
+            if (enabled[r] && RULES[r].rewrite.apply(this, i)) {
+                hits[r]++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PEEPHOLE REPORT\n");
+        sb.append("--------------------------------\n");
+        long total = 0;
+        for (int r = 0; r < RULES.length; r++) {
+            if (!enabled[r]) continue;
+            sb.append(String.format("%-22s %8d   %s%n", RULES[r].name, hits[r], RULES[r].doc));
+            total += hits[r];
+        }
+        sb.append(String.format("total %d reescrituras en %d recorridos%n", total, sweeps));
+        return sb.toString();
+    }
+
+    // ---- recorrido y recuentos ----
+
+    // Siguiente / anterior instrucción no quitada (n / -1 si no hay)
+    private int next(int i) {
+        do i++; while (i < n && code[i] == null);
+        return i;
+    }
+
+    private int prev(int i) {
+        do i--; while (i >= 0 && code[i] == null);
+        return Math.max(i, 0);
+    }
+
+    private void set(int i, Instr in) {
+        diamondAt = -1;
+        count(code[i], -1);
+        count(in, 1);
+        code[i] = in;
+    }
+
+    private void count(Instr in, int d) {
+        if (in == null) return;
+        if (in.readsOperands()) {
+            if (isTemp(in.a)) reads.merge(in.a, d, Integer::sum);
+            if (isTemp(in.b)) reads.merge(in.b, d, Integer::sum);
+        }
+        String l = in.op.equals("call") ? in.a : in.jumpTarget();
+        if (l != null) refs.merge(l, d, Integer::sum);
+    }
+
+    private boolean isTemp(String s) {
+        return Instr.isTemp(s, vars);
+    }
+
+    private int reads(String t) {
+        return reads.getOrDefault(t, 0);
+    }
+
+    private int refs(String l) {
+        return refs.getOrDefault(l, 0);
+    }
+
+    private static boolean isConst(String s, int v) {
+        Integer k = Instr.constValue(s);
+        return k != null && k == v;
+    }
+
+    // ---- reglas ----
+
+    private boolean fold(int i) {
+        Instr in = code[i];
+        if (in.isBranch()) {
+            Integer x = Instr.constValue(in.a), y = Instr.constValue(in.b);
+            if (x == null || y == null) return false;
+            set(i, Instr.test(in.op, x, y) ? new Instr("goto", in.c, null, null) : null);
+            return true;
+        }
+        if (!in.isDef() || in.op.equals("copy")) return false;
+        Integer x = Instr.constValue(in.a);
+        if (x == null) return false;
+        Integer v;
+        if (in.op.equals("neg")) v = -x;
+        else if (in.op.equals("not")) v = ~x;
+        else {
+            Integer y = Instr.constValue(in.b);
+            if (y == null) return false;
+            v = Instr.eval(in.op, x, y); // null: división por cero, se deja que falle al ejecutar
+            if (v == null) return false;
+        }
+        set(i, new Instr("copy", String.valueOf(v), null, in.c));
+        return true;
+    }
+
+    private boolean algebraic(int i) {
+        Instr in = code[i];
+        if (in.op.equals("copy") && in.a.equals(in.c)) {
+            set(i, null);
+            return true;
+        }
+        String a = in.a, b = in.b;
+        String op = null, x = null; // resultado: op x _ c
+        switch (in.op) {
+            case "add":
+                if (isConst(b, 0)) { op = "copy"; x = a; }
+                else if (isConst(a, 0)) { op = "copy"; x = b; }
+                break;
+            case "sub":
+                if (isConst(b, 0)) { op = "copy"; x = a; }
+                else if (isConst(a, 0)) { op = "neg"; x = b; }
+                else if (a.equals(b)) { op = "copy"; x = "0"; }
+                break;
+            case "prod":
+                if (isConst(b, 1)) { op = "copy"; x = a; }
+                else if (isConst(a, 1)) { op = "copy"; x = b; }
+                else if (isConst(a, 0) || isConst(b, 0)) { op = "copy"; x = "0"; }
+                else if (isConst(b, -1)) { op = "neg"; x = a; }
+                else if (isConst(a, -1)) { op = "neg"; x = b; }
+                break;
+            case "div":
+                // solo con divisor constante: x / y con y variable puede ser división por cero
+                if (isConst(b, 1)) { op = "copy"; x = a; }
+                else if (isConst(b, -1)) { op = "neg"; x = a; }
+                break;
+            case "mod":
+                if (isConst(b, 1) || isConst(b, -1)) { op = "copy"; x = "0"; }
+                break;
+            case "and":
+                if (isConst(b, -1) || a.equals(b)) { op = "copy"; x = a; }
+                else if (isConst(a, -1)) { op = "copy"; x = b; }
+                else if (isConst(a, 0) || isConst(b, 0)) { op = "copy"; x = "0"; }
+                break;
+            case "or":
+                if (isConst(b, 0) || a.equals(b)) { op = "copy"; x = a; }
+                else if (isConst(a, 0)) { op = "copy"; x = b; }
+                else if (isConst(a, -1) || isConst(b, -1)) { op = "copy"; x = "-1"; }
+                break;
+            default:
+                break;
+        }
+        if (op == null) return false;
+        set(i, new Instr(op, x, null, in.c));
+        return true;
+    }
+
+    // copy K t; ...; op t y u  ->  op K y u   (t solo se lee ahí)
+    private boolean constantToUse(int i) {
+        Instr d = code[i];
+        if (!d.op.equals("copy") || Instr.constValue(d.a) == null || !isTemp(d.c) || reads(d.c) != 1) return false;
+        String t = d.c;
+        int j = i;
+        for (int k = 0; k < LOOKAHEAD; k++) {
+            j = next(j);
+            if (j >= n) return false;
+            Instr in = code[j];
+            if (in.readsOperands() && (t.equals(in.a) || t.equals(in.b))) {
+                set(j, new Instr(in.op, t.equals(in.a) ? d.a : in.a, t.equals(in.b) ? d.a : in.b, in.c));
+                set(i, null);
+                return true;
+            }
+            // fin de la línea recta o t se vuelve a escribir
+            if (!in.isDef() && !in.op.equals("print") && !in.op.equals("prof")) return false;
+            if (t.equals(in.c)) return false;
+        }
+        return false;
+    }
+
+    // op a b t; copy t x  ->  op a b x
+    private boolean copyAfterCompute(int i) {
+        Instr d = code[i];
+        if (!d.isDef() || !isTemp(d.c) || reads(d.c) != 1) return false;
+        int j = next(i);
+        if (j >= n) return false;
+        Instr c = code[j];
+        if (!c.op.equals("copy") || !d.c.equals(c.a)) return false;
+        set(i, new Instr(d.op, d.a, d.b, c.c));
+        set(j, null);
+        return true;
+    }
+
+    // op a t; op t u  ->  copy a u   (neg y not son involuciones)
+    private boolean unaryTwice(int i, String op) {
+        Instr f = code[i];
+        if (!f.op.equals(op) || !isTemp(f.c) || reads(f.c) != 1) return false;
+        int j = next(i);
+        if (j >= n) return false;
+        Instr g = code[j];
+        if (!g.op.equals(op) || !f.c.equals(g.a)) return false;
+        set(i, new Instr("copy", f.a, null, g.c));
+        set(j, null);
+        return true;
+    }
+
+    /*
+     * Comparación materializada (Parser.emitCompare), empezando en i:
+     *
+     *   w0 if_CC a b L1      w3 skip L1
+     *   w1 copy K0 _ t       w4 copy K1 _ t
+     *   w2 goto L2           w5 skip L2
+     *
+     * con K0/K1 constantes, t leído una sola vez y sin más saltos a L1 ni
+     * L2. Deja los índices en w y devuelve el de la instrucción siguiente
+     * (w[6]), o -1 si no encaja.
+     */
+    private final int[] w = new int[7];
+    private int diamondAt = -1, diamondEnd; // última consulta (las tres reglas de comparación miran lo mismo)
+
+    private int diamond(int i) {
+        if (diamondAt != i) {
+            diamondAt = i;
+            diamondEnd = matchDiamond(i);
+        }
+        return diamondEnd;
+    }
+
+    private int matchDiamond(int i) {
+        Instr br = code[i];
+        if (!br.isBranch()) return -1;
+        w[0] = i;
+        for (int k = 1; k < 7; k++) {
+            w[k] = next(w[k - 1]);
+            if (w[k] >= n) return -1;
+        }
+        Instr c0 = code[w[1]], g = code[w[2]], l1 = code[w[3]], c1 = code[w[4]], l2 = code[w[5]];
+        if (!c0.op.equals("copy") || Instr.constValue(c0.a) == null || !isTemp(c0.c)) return -1;
+        if (!g.op.equals("goto") || !l1.isLabel() || !l2.isLabel()) return -1;
+        if (!l1.a.equals(br.c) || !l2.a.equals(g.a) || l1.a.equals(l2.a)) return -1;
+        if (!c1.op.equals("copy") || Instr.constValue(c1.a) == null || !c0.c.equals(c1.c)) return -1;
+        if (refs(l1.a) != 1 || refs(l2.a) != 1 || reads(c0.c) != 1) return -1;
+        return w[6];
+    }
+
+    // comparación a t; not/copy t u  ->  comparación a u (con ~K0, ~K1 si es not)
+    private boolean compareInto(int i, String op) {
+        if (diamond(i) < 0) return false;
+        Instr c0 = code[w[1]], c1 = code[w[4]], u = code[w[6]];
+        if (!u.op.equals(op) || !c0.c.equals(u.a)) return false;
+        int k0 = Instr.constValue(c0.a), k1 = Instr.constValue(c1.a);
+        if (op.equals("not")) {
+            k0 = ~k0;
+            k1 = ~k1;
+        }
+        set(w[1], new Instr("copy", String.valueOf(k0), null, u.c));
+        set(w[4], new Instr("copy", String.valueOf(k1), null, u.c));
+        set(w[6], null);
+        return true;
+    }
+
+    // comparación a t; if_ t K L  ->  if_CC a b L, su contrario, goto L o nada
+    private boolean branchOnCompare(int i) {
+        if (diamond(i) < 0) return false;
+        Instr br = code[i], c0 = code[w[1]], c1 = code[w[4]], j = code[w[6]];
+        if (!j.isBranch()) return false;
+        String t = c0.c;
+        boolean tFirst = t.equals(j.a);
+        Integer k = Instr.constValue(tFirst ? j.b : j.a);
+        if (k == null || !(tFirst || t.equals(j.b))) return false;
+        int k0 = Instr.constValue(c0.a), k1 = Instr.constValue(c1.a);
+        // ¿salta j si la comparación es cierta (t = k1) / falsa (t = k0)?
+        boolean onTrue = tFirst ? Instr.test(j.op, k1, k) : Instr.test(j.op, k, k1);
+        boolean onFalse = tFirst ? Instr.test(j.op, k0, k) : Instr.test(j.op, k, k0);
+
+        Instr repl;
+        if (onTrue && onFalse) repl = new Instr("goto", j.c, null, null);
+        else if (onTrue) repl = new Instr(br.op, br.a, br.b, j.c);
+        else if (onFalse) repl = new Instr(Instr.invert(br.op), br.a, br.b, j.c);
+        else repl = null;
+        set(w[0], repl);
+        for (int m = 1; m < 7; m++) set(w[m], null);
+        return true;
+    }
+
+    // goto L / if_ a b L seguido (entre etiquetas) de skip L
+    private boolean jumpToNext(int i) {
+        Instr in = code[i];
+        if (!in.op.equals("goto") && !in.isBranch()) return false;
+        String l = in.jumpTarget();
+        for (int j = next(i); j < n && code[j].isLabel(); j = next(j)) {
+            if (code[j].a.equals(l)) {
+                set(i, null);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Tras goto/halt/return no se llega a nada hasta la siguiente etiqueta
+    private boolean unreachable(int i) {
+        String op = code[i].op;
+        if (!op.equals("goto") && !op.equals("halt") && !op.equals("return")) return false;
+        int j = next(i);
+        if (j >= n || code[j].isLabel()) return false;
+        set(j, null);
+        return true;
+    }
+
+    private boolean deadLabel(int i) {
+        Instr in = code[i];
+        if (!in.isLabel() || !Instr.isLocalLabel(in.a) || refs(in.a) != 0) return false;
+        set(i, null);
+        return true;
+    }
+
+    private boolean deadTemp(int i) {
+        Instr in = code[i];
+        if (!in.isDef() || !isTemp(in.c) || reads(in.c) != 0 || DeadCode.mayFail(in)) return false;
+        set(i, null);
+        return true;
+    }
+}
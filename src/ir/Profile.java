@@ -0,0 +1,49 @@
+package ir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Contadores de ejecución de un programa instrumentado (instrucciones "prof N").
+ *
+ * Formato de texto: una cabecera "PROFILE n" y después una línea
+ * "indice veces" por contador.
+ */
+public class Profile {
+    private final long[] counts;
+
+    public Profile(long[] counts) {
+        this.counts = counts;
+    }
+
+    public int size() { return counts.length; }
+    public long get(int i) { return counts[i]; }
+
+    public void write(Path file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PROFILE ").append(counts.length).append('\n');
+        for (int i = 0; i < counts.length; i++) sb.append(i).append(' ').append(counts[i]).append('\n');
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Profile read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        try {
+            String[] head = lines.get(0).trim().split("\\s+");
+            if (head.length != 2 || !head[0].equals("PROFILE")) throw new IOException("Perfil mal formado: " + file);
+            long[] counts = new long[Integer.parseInt(head[1])];
+            for (int k = 1; k < lines.size(); k++) {
+                String l = lines.get(k).trim();
+                if (l.isEmpty()) continue;
+                String[] f = l.split("\\s+");
+                counts[Integer.parseInt(f[0])] = Long.parseLong(f[1]);
+            }
+            return new Profile(counts);
+        } catch (RuntimeException ex) {
+            throw new IOException("Perfil mal formado: " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Propagación de constantes condicional (SCCP) sobre el grafo de flujo.
+ *
+ * Cada bloque tiene a la entrada un mapa variable -> constante; lo que no
+ * está en el mapa no es constante. Un bloque que aún no se ha alcanzado
+ * no tiene mapa, y solo se siguen las aristas que pueden ejecutarse: si
+ * la condición de un if_ es constante, solo se sigue el lado que toca.
+ * Al llegar por varias aristas se queda lo que coincide en todas.
+ *
+ * Después se reescribe el código:
+ *  - operandos constantes sustituidos por su valor,
+ *  - operaciones con todo constante -> copy del resultado,
+ *  - if_ con resultado conocido -> goto (o desaparece),
+ *  - bloques a los que no se llega, fuera.
+ *
+ * En la entrada del programa y de cada procedimiento nada es constante;
+ * un call puede cambiar cualquier variable del programa (no los temporales).
+ *
+ * A la salida de cada bloque solo se pasa lo que sigue vivo (Liveness): si
+ * no, cada temporal constante iría en el mapa de todos los bloques de
+ * detrás y en programas grandes los mapas no cabrían en memoria.
+ */
+public class Sccp implements Pass {
+
+    private List<Instr> code;
+    private Set<String> vars;
+    private Cfg cfg;
+    private Liveness live;
+    private List<Map<String, Integer>> in;
+
+    @Override
+    public String name() { return "sccp"; }
+
+    @Override
+    public Set<Analysis> requires() { return EnumSet.of(Analysis.CFG, Analysis.LIVENESS); }
+
+    @Override
+    public boolean run(PassManager pm) {
+        code = pm.code();
+        vars = pm.vars();
+        cfg = pm.cfg();
+        live = pm.liveness();
+        analyze();
+
+        List<Instr> out = new ArrayList<>(code.size());
+        for (Cfg.Block b : cfg.blocks) {
+            Map<String, Integer> state = in.get(b.id);
+            if (state == null) continue; // inalcanzable
+            rewrite(b, new HashMap<>(state), out);
+        }
+        boolean changed = !out.equals(code);
+        code.clear();
+        code.addAll(out);
+        return changed;
+    }
+
+    private void analyze() {
+        in = new ArrayList<>();
+        ArrayDeque<Cfg.Block> work = new ArrayDeque<>();
+        for (Cfg.Block b : cfg.blocks) {
+            in.add(b.entry ? new HashMap<>() : null);
+            if (b.entry) work.add(b);
+        }
+        while (!work.isEmpty()) {
+            Cfg.Block b = work.poll();
+            Map<String, Integer> state = new HashMap<>(in.get(b.id));
+            for (int i = b.start; i < b.end; i++) transfer(code.get(i), state);
+            List<Cfg.Block> succs = executableSuccs(b, state);
+            state.keySet().retainAll(live.liveOut(b));
+            for (Cfg.Block s : succs) {
+                if (merge(s, state)) work.add(s);
+            }
+        }
+    }
+
+    // Aristas que pueden ejecutarse con el estado de salida del bloque
+    private List<Cfg.Block> executableSuccs(Cfg.Block b, Map<String, Integer> state) {
+        Instr last = code.get(b.end - 1);
+        if (!last.isBranch()) return b.succ;
+        Boolean taken = decide(last, state);
+        List<Cfg.Block> out = new ArrayList<>(2);
+        if (taken == null || taken) out.add(cfg.labelBlock(last.c));
+        if ((taken == null || !taken) && cfg.next(b) != null) out.add(cfg.next(b));
+        return out;
+    }
+
+    // Reunión: lo que coincide en ambos; true si cambia el estado de entrada de s
+    private boolean merge(Cfg.Block s, Map<String, Integer> state) {
+        Map<String, Integer> cur = in.get(s.id);
+        if (cur == null) {
+            in.set(s.id, new HashMap<>(state));
+            return true;
+        }
+        boolean changed = false;
+        for (Iterator<Map.Entry<String, Integer>> it = cur.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Integer> e = it.next();
+            if (!e.getValue().equals(state.get(e.getKey()))) {
+                it.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void transfer(Instr in, Map<String, Integer> state) {
+        if (in.op.equals("call")) {
+            state.keySet().removeIf(v -> !Instr.isTemp(v, vars));
+            return;
+        }
+        if (!in.isDef()) return;
+        Integer v = evaluate(in, state);
+        if (v == null) state.remove(in.c);
+        else state.put(in.c, v);
+    }
+
+    private Integer value(String s, Map<String, Integer> state) {
+        Integer k = Instr.constValue(s);
+        return (k != null) ? k : state.get(s);
+    }
+
+    // Resultado de copy/operación si todos sus operandos son constantes
+    private Integer evaluate(Instr in, Map<String, Integer> state) {
+        Integer x = value(in.a, state);
+        if (x == null) return null;
+        switch (in.op) {
+            case "copy": return x;
+            case "neg": return -x;
+            case "not": return ~x;
+            default: break;
+        }
+        Integer y = value(in.b, state);
+        if (y == null) return null;
+        return Instr.eval(in.op, x, y);
+    }
+
+    // ¿Salta el if_? null si no se sabe al compilar
+    private Boolean decide(Instr in, Map<String, Integer> state) {
+        Integer x = value(in.a, state), y = value(in.b, state);
+        if (x == null || y == null) return null;
+        return Instr.test(in.op, x, y);
+    }
+
+    private void rewrite(Cfg.Block b, Map<String, Integer> state, List<Instr> out) {
+        for (int i = b.start; i < b.end; i++) {
+            Instr in = code.get(i);
+            if (in.isBranch()) {
+                Boolean taken = decide(in, state);
+                if (taken == null) out.add(new Instr(in.op, operand(in.a, state), operand(in.b, state), in.c));
+                else if (taken) out.add(new Instr("goto", in.c, null, null));
+                continue;
+            }
+            if (in.op.equals("copy") && Instr.constValue(in.a) != null) {
+                out.add(in); // ya es una constante (así se conservan los literales char)
+            } else if (in.isDef()) {
+                Integer v = evaluate(in, state);
+                if (v != null) out.add(new Instr("copy", String.valueOf(v), null, in.c));
+                else out.add(new Instr(in.op, operand(in.a, state), operand(in.b, state), in.c));
+            } else if (in.readsOperands()) {
+                out.add(new Instr(in.op, operand(in.a, state), in.b, in.c));
+            } else {
+                out.add(in);
+            }
+            transfer(in, state);
+        }
+    }
+
+    private String operand(String s, Map<String, Integer> state) {
+        if (s == null || Instr.constValue(s) != null) return s;
+        Integer v = state.get(s);
+        return (v == null) ? s : String.valueOf(v);
+    }
+}
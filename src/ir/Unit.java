@@ -0,0 +1,32 @@
+package ir;
+
+import sem.SymbolTable;
+
+import java.util.List;
+
+/**
+ * Unidad de compilación ya traducida: código reubicable (temporales y
+ * etiquetas LN propios, que el Linker renumera), sus entradas de la tabla de
+ * símbolos y lo que exporta (ver sem.Export, en texto).
+ *
+ * sourceHash e importHash identifican el fuente y los exports de las demás
+ * unidades con los que se compiló: si no cambian, el objeto se reutiliza.
+ */
+public class Unit {
+    public final String name;
+    public final IRBuilder code;
+    public final List<SymbolTable.Entry> symbols;
+    public final List<String> exports;
+    public final long sourceHash;
+    public final long importHash;
+
+    public Unit(String name, IRBuilder code, List<SymbolTable.Entry> symbols, List<String> exports,
+                long sourceHash, long importHash) {
+        this.name = name;
+        this.code = code;
+        this.symbols = symbols;
+        this.exports = exports;
+        this.sourceHash = sourceHash;
+        this.importHash = importHash;
+    }
+}
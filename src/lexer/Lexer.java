@@ -6,7 +6,7 @@ import util.SourceReader;
 import java.util.HashMap;
 import java.util.Map;
 
-public class Lexer {
+public class Lexer implements TokenStream {
     private final SourceReader r;
     private final ErrorManager err;
 
@@ -33,14 +33,14 @@ public class Lexer {
         this.err = err;
     }
 
+    @Override
     public Token nextToken() {
         skipWhitespaceAndComments();
 
-        int line = r.getLine();
-        int col  = r.getCol();
+        int start = r.getOffset();
 
         if (r.isEOF()) {
-            return new Token(TokenType.EOF, "<EOF>", null, line, col);
+            return new Token(TokenType.EOF, "<EOF>", null, start);
         }
 
         char c = r.peek();
@@ -49,14 +49,14 @@ public class Lexer {
         if (isLetter(c) || c == '_') {
             String lex = readIdentifier();
             TokenType type = KEYWORDS.getOrDefault(lex, TokenType.ID);
-            return new Token(type, lex, null, line, col);
+            return new Token(type, lex, null, start);
         }
 
         // Numbers
         if (isDigit(c)) {
             String lex = readNumber();
             Integer val = Integer.parseInt(lex);
-            return new Token(TokenType.NUM, lex, val, line, col);
+            return new Token(TokenType.NUM, lex, val, start);
         }
 
         // Char literal: 'A' o '\n'
@@ -65,37 +65,37 @@ public class Lexer {
         }
 
         // Two-char operators
-        if (c == '=' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.EQEQ, "==", null, line, col); }
-        if (c == '!' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.NEQ, "!=", null, line, col); }
-        if (c == '<' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.LE, "<=", null, line, col); }
-        if (c == '>' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.GE, ">=", null, line, col); }
-        if (c == '&' && r.peekNext() == '&') { r.next(); r.next(); return new Token(TokenType.ANDAND, "&&", null, line, col); }
-        if (c == '|' && r.peekNext() == '|') { r.next(); r.next(); return new Token(TokenType.OROR, "||", null, line, col); }
+        if (c == '=' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.EQEQ, "==", null, start); }
+        if (c == '!' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.NEQ, "!=", null, start); }
+        if (c == '<' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.LE, "<=", null, start); }
+        if (c == '>' && r.peekNext() == '=') { r.next(); r.next(); return new Token(TokenType.GE, ">=", null, start); }
+        if (c == '&' && r.peekNext() == '&') { r.next(); r.next(); return new Token(TokenType.ANDAND, "&&", null, start); }
+        if (c == '|' && r.peekNext() == '|') { r.next(); r.next(); return new Token(TokenType.OROR, "||", null, start); }
 
         // Single-char tokens
         switch (c) {
-            case '=': r.next(); return new Token(TokenType.ASSIGN, "=", null, line, col);
-            case '+': r.next(); return new Token(TokenType.PLUS, "+", null, line, col);
-            case '-': r.next(); return new Token(TokenType.MINUS, "-", null, line, col);
-            case '*': r.next(); return new Token(TokenType.STAR, "*", null, line, col);
-            case '/': r.next(); return new Token(TokenType.SLASH, "/", null, line, col);
-            case '%': r.next(); return new Token(TokenType.MOD, "%", null, line, col);
-            case '<': r.next(); return new Token(TokenType.LT, "<", null, line, col);
-            case '>': r.next(); return new Token(TokenType.GT, ">", null, line, col);
-            case '!': r.next(); return new Token(TokenType.NOT, "!", null, line, col);
-
-            case '(': r.next(); return new Token(TokenType.LPAREN, "(", null, line, col);
-            case ')': r.next(); return new Token(TokenType.RPAREN, ")", null, line, col);
-            case '{': r.next(); return new Token(TokenType.LBRACE, "{", null, line, col);
-            case '}': r.next(); return new Token(TokenType.RBRACE, "}", null, line, col);
-            case ';': r.next(); return new Token(TokenType.SEMI, ";", null, line, col);
-            case ',': r.next(); return new Token(TokenType.COMMA, ",", null, line, col);
+            case '=': r.next(); return new Token(TokenType.ASSIGN, "=", null, start);
+            case '+': r.next(); return new Token(TokenType.PLUS, "+", null, start);
+            case '-': r.next(); return new Token(TokenType.MINUS, "-", null, start);
+            case '*': r.next(); return new Token(TokenType.STAR, "*", null, start);
+            case '/': r.next(); return new Token(TokenType.SLASH, "/", null, start);
+            case '%': r.next(); return new Token(TokenType.MOD, "%", null, start);
+            case '<': r.next(); return new Token(TokenType.LT, "<", null, start);
+            case '>': r.next(); return new Token(TokenType.GT, ">", null, start);
+            case '!': r.next(); return new Token(TokenType.NOT, "!", null, start);
+
+            case '(': r.next(); return new Token(TokenType.LPAREN, "(", null, start);
+            case ')': r.next(); return new Token(TokenType.RPAREN, ")", null, start);
+            case '{': r.next(); return new Token(TokenType.LBRACE, "{", null, start);
+            case '}': r.next(); return new Token(TokenType.RBRACE, "}", null, start);
+            case ';': r.next(); return new Token(TokenType.SEMI, ";", null, start);
+            case ',': r.next(); return new Token(TokenType.COMMA, ",", null, start);
         }
 
         // Unknown char => lexical error
-        err.addLexical(line, col, "Carácter no reconocido: '" + c + "'");
+        err.addLexical(start, "Carácter no reconocido: '" + c + "'");
         r.next(); // consumir para no bucle infinito
-        return new Token(TokenType.ERROR, String.valueOf(c), null, line, col);
+        return new Token(TokenType.ERROR, String.valueOf(c), null, start);
     }
 
     private void skipWhitespaceAndComments() {
@@ -149,16 +149,15 @@ public class Lexer {
     }
 
     private Token readCharLiteral() {
-        int line = r.getLine();
-        int col  = r.getCol();
+        int start = r.getOffset();
 
         StringBuilder lex = new StringBuilder();
         lex.append(r.next()); // consume '
 
         if (r.isEOF()) {
-            err.addLexical(line, col, "Literal char sin cerrar");
+            err.addLexical(start, "Literal char sin cerrar");
             String bad = recoverBadCharLiteral(lex);
-            return new Token(TokenType.ERROR, bad, null, line, col);
+            return new Token(TokenType.ERROR, bad, null, start);
         }
 
         char c = r.next();
@@ -167,16 +166,16 @@ public class Lexer {
         char value;
 
         if (c == '\n' || c == '\r') {
-            err.addLexical(line, col, "Literal char inválido o sin cierre");
+            err.addLexical(start, "Literal char inválido o sin cierre");
             String bad = recoverBadCharLiteral(lex);
-            return new Token(TokenType.ERROR, bad, null, line, col);
+            return new Token(TokenType.ERROR, bad, null, start);
         }
 
         if (c == '\\') { // escape
             if (r.isEOF()) {
-                err.addLexical(line, col, "Escape incompleto en literal char");
+                err.addLexical(start, "Escape incompleto en literal char");
                 String bad = recoverBadCharLiteral(lex);
-                return new Token(TokenType.ERROR, bad, null, line, col);
+                return new Token(TokenType.ERROR, bad, null, start);
             }
 
             char e = r.next();
@@ -205,14 +204,14 @@ public class Lexer {
 
         // Debe cerrar con '
         if (r.peek() != '\'') {
-            err.addLexical(line, col, "Literal char inválido o sin cierre");
+            err.addLexical(start, "Literal char inválido o sin cierre");
             String bad = recoverBadCharLiteral(lex);
-            return new Token(TokenType.ERROR, bad, null, line, col);
+            return new Token(TokenType.ERROR, bad, null, start);
         }
 
         lex.append(r.next()); // consume cierre '
 
-        return new Token(TokenType.CHAR_LIT, lex.toString(), value, line, col);
+        return new Token(TokenType.CHAR_LIT, lex.toString(), value, start);
     }
 
     private boolean isLetter(char c) {
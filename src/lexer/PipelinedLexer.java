@@ -0,0 +1,102 @@
+package lexer;
+
+import errors.ErrorManager;
+import util.SourceReader;
+
+/**
+ * Lexer en su propio hilo: los tokens llegan al parser por un TokenRing.
+ *
+ * El hilo del lexer no toca el ErrorManager (no es seguro entre hilos y el
+ * orden cambiaría): cada error léxico viaja en la cola junto a su token
+ * ERROR y se apunta cuando el parser recoge ese token, igual que pasa
+ * con el Lexer normal. Así los errores salen en el mismo orden.
+ */
+public class PipelinedLexer implements TokenStream {
+
+    // con un solo procesador esperar girando no sirve: el otro hilo no avanza
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 200 : 0;
+
+    private final TokenRing ring;
+    private final ErrorManager err;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private Token eof;
+
+    // Se queda con el mensaje del último error (cada uno va con su token ERROR)
+    private static final class Pending extends ErrorManager {
+        private String msg;
+
+        @Override
+        public void addLexical(int offset, String m) { msg = m; }
+
+        String take() {
+            String m = msg;
+            msg = null;
+            return m;
+        }
+    }
+
+    /** La cola debe estar libre (ninguna otra compilación usándola). */
+    public PipelinedLexer(SourceReader r, ErrorManager err, TokenRing ring) {
+        this.ring = ring;
+        this.err = err;
+        ring.reset();
+        thread = new Thread(() -> produce(r), "lexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void produce(SourceReader r) {
+        try {
+            Pending pending = new Pending();
+            Lexer lexer = new Lexer(r, pending);
+            while (true) {
+                Token t = lexer.nextToken();
+                String msg = pending.take();
+                int spins = 0;
+                while (!ring.offer(t, msg)) {
+                    if (closed) return;
+                    spins = backoff(spins);
+                }
+                if (t.type == TokenType.EOF) break;
+            }
+            ring.publish();
+        } catch (Throwable ex) {
+            failure = ex;
+        }
+    }
+
+    @Override
+    public Token nextToken() {
+        if (eof != null) return eof; // tras EOF el lexer devuelve siempre EOF
+        Token t;
+        int spins = 0;
+        while ((t = ring.poll()) == null) {
+            if (failure != null) throw new IllegalStateException("Fallo en el hilo del lexer", failure);
+            spins = backoff(spins);
+        }
+        String msg = ring.lastError();
+        if (msg != null) err.addLexical(t.offset, msg);
+        if (t.type == TokenType.EOF) eof = t;
+        return t;
+    }
+
+    // Espera activa corta y luego cede el procesador
+    private static int backoff(int spins) {
+        if (spins < SPINS) Thread.onSpinWait();
+        else Thread.yield();
+        return spins + 1;
+    }
+
+    /** Para el hilo del lexer (si aún no ha terminado) y espera a que acabe. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
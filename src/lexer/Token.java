@@ -1,28 +1,50 @@
 package lexer;
 
+import util.LineIndex;
+import util.OutputWriter;
+
+import java.io.IOException;
+
 public class Token {
     public final TokenType type;
     public final String lexeme;
-    public final int line;
-    public final int column;
+    // posición: offset en el texto (línea/columna se sacan con LineIndex al imprimir)
+    public final int offset;
 
     // opcional: valor parseado para NUM/CHAR_LIT
     public final Object value;
 
-    public Token(TokenType type, String lexeme, Object value, int line, int column) {
+    public Token(TokenType type, String lexeme, Object value, int offset) {
         this.type = type;
         this.lexeme = lexeme;
         this.value = value;
-        this.line = line;
-        this.column = column;
+        this.offset = offset;
     }
 
-    @Override
-    public String toString() {
-        // formato simple para tokens.txt
+    // formato simple para tokens.txt
+    public String toString(LineIndex lines) {
+        int line = lines.line(offset);
+        int column = lines.col(offset);
         if (value != null) {
             return String.format("%d:%d  %-10s  %s  (value=%s)", line, column, type, lexeme, value);
         }
         return String.format("%d:%d  %-10s  %s", line, column, type, lexeme);
     }
+
+    // mismo texto que toString(lines), escrito directamente
+    public void writeTo(OutputWriter out, LineIndex lines) throws IOException {
+        out.writeInt(lines.line(offset)).write(':').writeInt(lines.col(offset)).spaces(2);
+        out.pad(type.name(), 10).spaces(2).write(lexeme);
+        if (value != null) {
+            out.write("  (value=");
+            if (value instanceof Integer) out.writeInt((Integer) value);
+            else out.write(String.valueOf(value));
+            out.write(')');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("@%d  %-10s  %s", offset, type, lexeme);
+    }
 }
@@ -0,0 +1,108 @@
+package lexer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola circular acotada de tokens entre un hilo productor (el lexer) y un
+ * hilo consumidor (el parser), sin locks.
+ *
+ * tail = tokens publicados por el productor, head = tokens ya consumidos.
+ * Cada lado lleva su índice en un campo normal y solo publica el contador
+ * atómico cada BATCH tokens (o cuando se queda sin sitio / sin datos), con
+ * lazySet: la escritura de las casillas queda visible antes que el índice.
+ * Cada lado guarda también la última lectura del índice del otro para no
+ * tocar memoria compartida en cada token.
+ *
+ * Un solo productor y un solo consumidor a la vez. Se puede reutilizar
+ * entre compilaciones con reset() cuando ninguno de los dos hilos la usa.
+ */
+public final class TokenRing {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    static final int BATCH = 64;
+
+    private final Token[] tokens;
+    private final String[] errors; // error léxico de cada token (o null)
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    // lado productor
+    private long write;
+    private long headCache;
+
+    // lado consumidor
+    private long read;
+    private long tailCache;
+    private String lastError;
+
+    /** capacity: potencia de 2, al menos 2 * BATCH. */
+    public TokenRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1 || capacity < 2 * BATCH) {
+            throw new IllegalArgumentException("Capacidad no válida: " + capacity);
+        }
+        tokens = new Token[capacity];
+        errors = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Deja la cola vacía para otra compilación (sin hilos usándola). */
+    public void reset() {
+        Arrays.fill(tokens, null);
+        Arrays.fill(errors, null);
+        write = headCache = read = tailCache = 0;
+        lastError = null;
+        tail.set(0);
+        head.set(0);
+    }
+
+    // --------- Productor ---------
+
+    /** Añade un token; false si la cola está llena (lo ya escrito queda publicado). */
+    boolean offer(Token t, String error) {
+        if (write - headCache == tokens.length) {
+            headCache = head.get();
+            if (write - headCache == tokens.length) {
+                publish();
+                return false;
+            }
+        }
+        int i = (int) write & mask;
+        tokens[i] = t;
+        errors[i] = error;
+        write++;
+        if ((write & (BATCH - 1)) == 0) tail.lazySet(write);
+        return true;
+    }
+
+    /** Hace visibles al consumidor los tokens escritos. */
+    void publish() {
+        tail.lazySet(write);
+    }
+
+    // --------- Consumidor ---------
+
+    /** Siguiente token o null si no hay ninguno publicado. */
+    Token poll() {
+        if (read == tailCache) {
+            tailCache = tail.get();
+            if (read == tailCache) {
+                head.lazySet(read); // que el productor vea todo el sitio libre
+                return null;
+            }
+        }
+        int i = (int) read & mask;
+        Token t = tokens[i];
+        lastError = errors[i];
+        tokens[i] = null;
+        errors[i] = null;
+        read++;
+        if ((read & (BATCH - 1)) == 0) head.lazySet(read);
+        return t;
+    }
+
+    /** Error léxico que acompañaba al último token de poll() (o null). */
+    String lastError() { return lastError; }
+}
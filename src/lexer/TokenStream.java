@@ -0,0 +1,15 @@
+package lexer;
+
+/**
+ * Fuente de tokens para el parser.
+ * La implementa el Lexer (lectura directa del fichero) y también cualquier
+ * otra fuente que ya tenga los tokens calculados (p.ej. el documento del
+ * modo editor) o que los reciba de otro hilo (PipelinedLexer).
+ */
+public interface TokenStream extends AutoCloseable {
+    Token nextToken();
+
+    /** Libera lo que use la fuente (hilos...). Por defecto no hay nada que liberar. */
+    @Override
+    default void close() { }
+}
@@ -0,0 +1,496 @@
+package lsp;
+
+import errors.ErrorManager;
+import lexer.Lexer;
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
+import parser.Parser;
+import util.LineIndex;
+import util.SourceReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Documento en memoria para el modo editor.
+ *
+ * Guarda el texto, sus tokens (con offset de inicio/fin) y el resultado del
+ * último análisis. Tras una edición:
+ *  - solo se vuelve a lexear el tramo de tokens dañado (hasta que el lexer
+ *    vuelve a caer en el inicio de un token antiguo),
+ *  - en el bloque '{...}' más interno que contiene la edición, si cae en
+ *    sus sentencias, se vuelve a analizar desde la sentencia donde empieza
+ *    el daño hasta llegar al principio de una sentencia antigua (o al final
+ *    de las del bloque), con lo declarado en el bloque;
+ *  - si cae en sus declaraciones, se vuelve a analizar el bloque entero con
+ *    lo que había declarado al entrar (scopes y procedimientos).
+ * Si lo re-analizado no termina en el mismo sitio que antes (se ha roto la
+ * estructura de llaves), se vuelve a analizar todo el programa.
+ */
+public class Document {
+
+    /** Error listo para publicar: rango [start, end) en offsets del texto. */
+    public static class Diagnostic {
+        public final int start;
+        public final int end;
+        public final String message;
+
+        public Diagnostic(int start, int end, String message) {
+            this.start = start;
+            this.end = end;
+            this.message = message;
+        }
+    }
+
+    // Bloque visto en el último análisis: tokens [start, end), errores [errFrom, errTo),
+    // lo declarado al entrar (ctx) y en sus sentencias (body), y el token donde
+    // empieza cada sentencia directa (la última marca es donde se acaban) con
+    // los errores que había antes de ella
+    private static class Block {
+        int start, end;
+        int errFrom, errTo;
+        final Parser.Context ctx;
+        Parser.Context body;
+        int[] stmt = new int[4];
+        int[] stmtErr = new int[4];
+        int stmts;
+
+        Block(int start, Parser.Context ctx, int errFrom) {
+            this.start = start;
+            this.ctx = ctx;
+            this.errFrom = errFrom;
+        }
+
+        void addStmt(int tok, int err) {
+            if (stmts == stmt.length) {
+                stmt = Arrays.copyOf(stmt, 2 * stmts);
+                stmtErr = Arrays.copyOf(stmtErr, 2 * stmts);
+            }
+            stmt[stmts] = tok;
+            stmtErr[stmts++] = err;
+        }
+
+        // Desplaza lo que va desde el token 'from' (y los errores de ahí en adelante)
+        void shift(int from, int tokDelta, int errDelta) {
+            if (end < from) return;
+            if (start >= from) {
+                start += tokDelta;
+                errFrom += errDelta;
+            }
+            end += tokDelta;
+            errTo += errDelta;
+            for (int k = 0; k < stmts; k++) {
+                if (stmt[k] < from) continue;
+                stmt[k] += tokDelta;
+                stmtErr[k] += errDelta;
+            }
+        }
+
+        // Última marca de sentencia antes del token tok (-1 si no hay)
+        int stmtBefore(int tok) {
+            int k = Arrays.binarySearch(stmt, 0, stmts, tok);
+            return (k >= 0 ? k : -k - 1) - 1;
+        }
+    }
+
+    // Error del parser, anclado al índice del token que era lookahead
+    private static class ParseError {
+        int tok;
+        final String msg;
+
+        ParseError(int tok, String msg) {
+            this.tok = tok;
+            this.msg = msg;
+        }
+    }
+
+    private String text;
+    private LineIndex lines;
+
+    // tokens y sus posiciones (arrays paralelos, n usados)
+    private final List<Token> tokens = new ArrayList<>();
+    private int[] tokStart = new int[64];
+    private int[] tokEnd = new int[64];
+    private String[] lexErr = new String[64];
+    private int n;
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<ParseError> parseErrors = new ArrayList<>();
+
+    public Document(String text) {
+        this.text = text;
+        this.lines = new LineIndex(text);
+        List<Token> nt = new ArrayList<>();
+        List<int[]> pos = new ArrayList<>();
+        List<String> errs = new ArrayList<>();
+        lexUntilSync(0, Integer.MAX_VALUE, 0, 0, 0, nt, pos, errs);
+        splice(0, 0, nt, pos, errs, 0);
+        parseAll();
+    }
+
+    public String getText() { return text; }
+
+    // --------- Posiciones ---------
+
+    /** Línea (0-based) de un offset. */
+    public int lineOf(int offset) {
+        return lines.line(offset) - 1;
+    }
+
+    /** Columna (0-based) de un offset. */
+    public int colOf(int offset) {
+        return lines.col(offset) - 1;
+    }
+
+    /** Offset de una posición (línea, carácter) 0-based, recortada al texto. */
+    public int offsetAt(int line, int character) {
+        int lineCount = lines.lineCount();
+        if (line >= lineCount) return text.length();
+        int off = lines.lineStart(line) + character;
+        int lineEnd = (line + 1 < lineCount) ? lines.lineStart(line + 1) : text.length();
+        return Math.min(off, lineEnd);
+    }
+
+    // --------- Edición ---------
+
+    /** Sustituye el texto [start, end) por ins y actualiza tokens y errores. */
+    public void replace(int start, int end, String ins) {
+        text = text.substring(0, start) + ins + text.substring(end);
+        lines = new LineIndex(text);
+        int delta = ins.length() - (end - start);
+
+        // primer token que puede verse afectado (incluye el que acaba justo en 'start')
+        int i0 = firstTokenEndingAtOrAfter(start);
+        int from = (i0 > 0) ? tokEnd[i0 - 1] : 0;
+
+        List<Token> nt = new ArrayList<>();
+        List<int[]> pos = new ArrayList<>();
+        List<String> errs = new ArrayList<>();
+        int j = lexUntilSync(from, start + ins.length(), end, delta, i0, nt, pos, errs);
+
+        if (nt.size() == j - i0 && sameTokens(i0, nt)) {
+            // mismo flujo de tokens: solo se mueven posiciones
+            splice(i0, j, nt, pos, errs, delta);
+            return;
+        }
+
+        int tokDelta = nt.size() - (j - i0);
+        int b = innermostBlock(i0, j);
+        splice(i0, j, nt, pos, errs, delta);
+
+        if (b < 0 || !reparse(b, i0, j, tokDelta)) parseAll();
+    }
+
+    private int firstTokenEndingAtOrAfter(int off) {
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokEnd[mid] >= off) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Lexea desde 'from' hasta volver a sincronizar con un token antiguo
+     * (mismo inicio, ya pasada la edición). Devuelve el índice del primer
+     * token antiguo que se conserva.
+     */
+    private int lexUntilSync(int from, int syncAt, int oldEditEnd, int delta, int j,
+                             List<Token> nt, List<int[]> pos, List<String> errs) {
+        Collector c = new Collector();
+        Lexer lx = new Lexer(new SourceReader(text, from), c);
+        while (true) {
+            Token t = lx.nextToken();
+            int ts = t.offset;
+            if (ts >= syncAt) {
+                while (j < n && (tokStart[j] < oldEditEnd || tokStart[j] + delta < ts)) j++;
+                if (j < n && tokStart[j] + delta == ts) return j;
+            }
+            nt.add(t);
+            pos.add(new int[] { ts, ts + tokenLength(t) });
+            errs.add(c.take());
+            if (t.type == TokenType.EOF) return n;
+        }
+    }
+
+    // El lexema es justo el texto consumido (salvo EOF, que no consume nada)
+    private int tokenLength(Token t) {
+        return t.type == TokenType.EOF ? 0 : t.lexeme.length();
+    }
+
+    private boolean sameTokens(int i0, List<Token> nt) {
+        for (int k = 0; k < nt.size(); k++) {
+            Token a = tokens.get(i0 + k), b = nt.get(k);
+            if (a.type != b.type || !a.lexeme.equals(b.lexeme)) return false;
+        }
+        return true;
+    }
+
+    // Cambia los tokens [i0, j) por los nuevos y desplaza los posteriores
+    private void splice(int i0, int j, List<Token> nt, List<int[]> pos, List<String> errs, int delta) {
+        int k = nt.size();
+        int newN = n - (j - i0) + k;
+        if (newN > tokStart.length) {
+            int cap = Math.max(newN, tokStart.length * 2);
+            tokStart = Arrays.copyOf(tokStart, cap);
+            tokEnd = Arrays.copyOf(tokEnd, cap);
+            lexErr = Arrays.copyOf(lexErr, cap);
+        }
+        System.arraycopy(tokStart, j, tokStart, i0 + k, n - j);
+        System.arraycopy(tokEnd, j, tokEnd, i0 + k, n - j);
+        System.arraycopy(lexErr, j, lexErr, i0 + k, n - j);
+        for (int i = i0 + k; i < newN; i++) {
+            tokStart[i] += delta;
+            tokEnd[i] += delta;
+        }
+        for (int i = 0; i < k; i++) {
+            tokStart[i0 + i] = pos.get(i)[0];
+            tokEnd[i0 + i] = pos.get(i)[1];
+            lexErr[i0 + i] = errs.get(i);
+        }
+        List<Token> range = tokens.subList(i0, j);
+        range.clear();
+        range.addAll(nt);
+        n = newN;
+    }
+
+    // --------- Análisis ---------
+
+    // Bloque más interno cuyo '{' va antes del daño y cuyo '}' va después
+    private int innermostBlock(int i0, int j) {
+        int best = -1;
+        for (int b = 0; b < blocks.size(); b++) {
+            Block blk = blocks.get(b);
+            if (blk.start >= i0) break;
+            if (blk.end - 1 >= j) best = b;
+        }
+        return best;
+    }
+
+    private void parseAll() {
+        blocks.clear();
+        parseErrors.clear();
+        parseAll(blocks, parseErrors);
+    }
+
+    private void parseAll(List<Block> blocks, List<ParseError> errs) {
+        Replay in = new Replay(0);
+        Recorder rec = new Recorder(in, blocks, errs, null);
+        Parser p = new Parser(in, rec);
+        p.setBlockListener(rec);
+        p.parseProgram();
+    }
+
+    /**
+     * Compara los errores del análisis incremental con los de analizar todo
+     * el texto otra vez (--check-incremental). Devuelve null si coinciden o
+     * la primera diferencia; en ese caso se queda con los del análisis completo.
+     */
+    public String checkIncremental() {
+        List<ParseError> full = new ArrayList<>();
+        parseAll(new ArrayList<>(), full);
+        String diff = null;
+        for (int k = 0; k < Math.max(full.size(), parseErrors.size()) && diff == null; k++) {
+            String a = (k < parseErrors.size()) ? describe(parseErrors.get(k)) : "(nada)";
+            String b = (k < full.size()) ? describe(full.get(k)) : "(nada)";
+            if (!a.equals(b)) diff = "error " + (k + 1) + ": incremental " + a + ", completo " + b;
+        }
+        if (diff != null) parseAll();
+        return diff;
+    }
+
+    private String describe(ParseError e) {
+        return (lineOf(tokStart[e.tok]) + 1) + ":" + (colOf(tokStart[e.tok]) + 1) + " " + e.msg;
+    }
+
+    /**
+     * Re-analiza lo que toca la edición de los tokens antiguos [i0, j) dentro
+     * del bloque b; false si no encaja con lo de alrededor.
+     */
+    private boolean reparse(int b, int i0, int j, int tokDelta) {
+        Block blk = blocks.get(b);
+        // antes de la primera sentencia están las declaraciones: el bloque entero
+        if (blk.stmts == 0 || i0 <= blk.stmt[0] || j > blk.stmt[blk.stmts - 1]) return reparseBlock(b, tokDelta);
+        return reparseStatements(blk, i0, j, tokDelta);
+    }
+
+    /** Re-analiza solo el bloque b; false si su final ya no encaja con el anterior. */
+    private boolean reparseBlock(int b, int tokDelta) {
+        Block old = blocks.get(b);
+        List<Block> nb = new ArrayList<>();
+        List<ParseError> ne = new ArrayList<>();
+
+        Replay in = new Replay(old.start);
+        Recorder rec = new Recorder(in, nb, ne, null);
+        Parser p = new Parser(in, rec);
+        p.setBlockListener(rec);
+        p.parseNestedBlock(old.ctx);
+
+        if (in.lookahead() != old.end + tokDelta) return false;
+        replaceAnalysis(old.start, old.end, old.errFrom, old.errTo, nb, ne, tokDelta);
+        return true;
+    }
+
+    /**
+     * Re-analiza las sentencias de blk desde la que tiene el último token
+     * antes de la edición (i0: una sentencia puede seguir según lo que venga
+     * detrás, como un if con else) hasta volver a caer, ya pasados los
+     * tokens nuevos, en el principio de una sentencia antigua del bloque o en
+     * el final de ellas. false si no se llega a caer en ninguno.
+     */
+    private boolean reparseStatements(Block blk, int i0, int j, int tokDelta) {
+        int a = blk.stmtBefore(i0);
+        int from = blk.stmt[a];
+        int newEnd = j + tokDelta; // primer token antiguo tras los nuevos
+        Block top = new Block(from, blk.body, 0);
+        List<Block> nb = new ArrayList<>();
+        List<ParseError> ne = new ArrayList<>();
+
+        Replay in = new Replay(from);
+        Recorder rec = new Recorder(in, nb, ne, top);
+        Parser p = new Parser(in, rec);
+        p.setBlockListener(rec);
+        BooleanSupplier synced = () -> in.lookahead() >= newEnd
+                && Arrays.binarySearch(blk.stmt, 0, blk.stmts, in.lookahead() - tokDelta) >= 0;
+        p.parseStatements(blk.body, synced);
+        if (!synced.getAsBoolean()) return false;
+
+        int oldEnd = in.lookahead() - tokDelta;
+        int m = Arrays.binarySearch(blk.stmt, 0, blk.stmts, oldEnd);
+        int errFrom = blk.stmtErr[a], errTo = blk.stmtErr[m];
+        replaceAnalysis(from, oldEnd, errFrom, errTo, nb, ne, tokDelta);
+
+        // marcas del bloque: las de en medio son las nuevas (la primera, 'from', no cambia)
+        int count = a + (top.stmts - 1) + (blk.stmts - m) + 1;
+        int[] stmt = new int[Math.max(4, count)];
+        int[] stmtErr = new int[stmt.length];
+        System.arraycopy(blk.stmt, 0, stmt, 0, a + 1);
+        System.arraycopy(blk.stmtErr, 0, stmtErr, 0, a + 1);
+        for (int k = 1; k < top.stmts; k++) {
+            stmt[a + k] = top.stmt[k];
+            stmtErr[a + k] = top.stmtErr[k] + errFrom;
+        }
+        System.arraycopy(blk.stmt, m, stmt, a + top.stmts, blk.stmts - m);
+        System.arraycopy(blk.stmtErr, m, stmtErr, a + top.stmts, blk.stmts - m);
+        blk.stmt = stmt;
+        blk.stmtErr = stmtErr;
+        blk.stmts = count;
+        return true;
+    }
+
+    /**
+     * Cambia el análisis de los tokens antiguos [from, oldEnd) (los errores
+     * [errFrom, errTo) y los bloques que empiezan ahí) por el nuevo (nb, ne,
+     * con los errores contados desde 0) y desplaza lo que va detrás.
+     */
+    private void replaceAnalysis(int from, int oldEnd, int errFrom, int errTo,
+                                 List<Block> nb, List<ParseError> ne, int tokDelta) {
+        int errDelta = ne.size() - (errTo - errFrom);
+        for (int e = errTo; e < parseErrors.size(); e++) parseErrors.get(e).tok += tokDelta;
+        List<ParseError> errRange = parseErrors.subList(errFrom, errTo);
+        errRange.clear();
+        errRange.addAll(ne);
+
+        int first = 0;
+        while (first < blocks.size() && blocks.get(first).start < from) first++;
+        int last = first;
+        while (last < blocks.size() && blocks.get(last).start < oldEnd) last++;
+        for (int i = 0; i < blocks.size(); i++) {
+            if (i == first) i = last; // los de en medio se sustituyen
+            if (i < blocks.size()) blocks.get(i).shift(oldEnd, tokDelta, errDelta);
+        }
+        for (Block blk : nb) blk.shift(0, 0, errFrom); // solo sus errores: pasan a contar desde errFrom
+        List<Block> blkRange = blocks.subList(first, last);
+        blkRange.clear();
+        blkRange.addAll(nb);
+    }
+
+    /** Errores léxicos, sintácticos y semánticos del estado actual. */
+    public List<Diagnostic> diagnostics() {
+        List<Diagnostic> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (lexErr[i] != null) out.add(new Diagnostic(tokStart[i], tokEnd[i], "[LEX] " + lexErr[i]));
+        }
+        for (ParseError e : parseErrors) {
+            out.add(new Diagnostic(tokStart[e.tok], tokEnd[e.tok], e.msg));
+        }
+        return out;
+    }
+
+    // --------- Fuentes/sumideros para Lexer y Parser ---------
+
+    // Vuelve a servir los tokens ya calculados a partir de un índice
+    private class Replay implements TokenStream {
+        private int next;
+
+        Replay(int from) { this.next = from; }
+
+        @Override
+        public Token nextToken() {
+            if (next < n) return tokens.get(next++);
+            return tokens.get(n - 1); // EOF
+        }
+
+        int lookahead() { return Math.min(next, n) - 1; }
+    }
+
+    // Recoge el mensaje del último error léxico (cada uno va con su token ERROR)
+    private static class Collector extends ErrorManager {
+        private String pending;
+
+        @Override
+        public void addLexical(int offset, String msg) { pending = msg; }
+
+        String take() {
+            String m = pending;
+            pending = null;
+            return m;
+        }
+    }
+
+    // Anota errores y bloques del parser con índices de token
+    private static class Recorder extends ErrorManager implements Parser.BlockListener {
+        private final Replay in;
+        private final List<Block> blocks;
+        private final List<ParseError> errs;
+        private final Block top; // dueño de las sentencias que no están en ningún bloque abierto (o null)
+        private final List<Block> open = new ArrayList<>();
+
+        Recorder(Replay in, List<Block> blocks, List<ParseError> errs, Block top) {
+            this.in = in;
+            this.blocks = blocks;
+            this.errs = errs;
+            this.top = top;
+        }
+
+        @Override
+        public void addLexical(int offset, String msg) {
+            errs.add(new ParseError(in.lookahead(), msg));
+        }
+
+        @Override
+        public void blockEntered(Parser.Context ctx) {
+            Block b = new Block(in.lookahead(), ctx, errs.size());
+            blocks.add(b);
+            open.add(b);
+        }
+
+        @Override
+        public void statementBoundary(Parser.Context ctx) {
+            Block b = open.isEmpty() ? top : open.get(open.size() - 1);
+            if (b.body == null) b.body = ctx;
+            b.addStmt(in.lookahead(), errs.size());
+        }
+
+        @Override
+        public void blockExited() {
+            Block b = open.remove(open.size() - 1);
+            b.end = in.lookahead();
+            b.errTo = errs.size();
+        }
+    }
+}
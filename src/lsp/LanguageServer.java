@@ -0,0 +1,236 @@
+package lsp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bucle JSON-RPC por stdin/stdout al estilo LSP (cabecera Content-Length).
+ *
+ * Soporta: initialize, initialized, textDocument/didOpen, didChange
+ * (cambios incrementales o texto completo), didClose, shutdown y exit.
+ * Tras cada cambio publica textDocument/publishDiagnostics.
+ *
+ * Con setCheckIncremental(true) (--lsp --check-incremental) cada cambio se
+ * vuelve a analizar también entero; si los errores no coinciden con los del
+ * análisis incremental se avisa con window/logMessage y se publican los buenos.
+ */
+public class LanguageServer {
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final Map<String, Document> docs = new HashMap<>();
+    private boolean running = true;
+    private boolean checkIncremental;
+
+    public LanguageServer(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public void setCheckIncremental(boolean on) { this.checkIncremental = on; }
+
+    public void run() throws IOException {
+        while (running) {
+            String body = readMessage();
+            if (body == null) return; // cliente cerrado
+            Object msg;
+            try {
+                msg = Json.parse(body);
+            } catch (IllegalArgumentException ex) {
+                send(error(null, -32700, ex.getMessage()));
+                continue;
+            }
+            if (msg instanceof Map) handle(asMap(msg));
+        }
+    }
+
+    // --------- Mensajes ---------
+
+    private void handle(Map<String, Object> msg) throws IOException {
+        Object id = msg.get("id");
+        String method = (String) msg.get("method");
+        Map<String, Object> params = asMap(msg.get("params"));
+        if (method == null) return; // respuesta a algo nuestro: nada que hacer
+
+        switch (method) {
+            case "initialize": {
+                Map<String, Object> caps = new LinkedHashMap<>();
+                caps.put("textDocumentSync", 2L); // incremental
+                Map<String, Object> res = new LinkedHashMap<>();
+                res.put("capabilities", caps);
+                send(result(id, res));
+                break;
+            }
+            case "textDocument/didOpen": {
+                Map<String, Object> td = asMap(params.get("textDocument"));
+                String uri = (String) td.get("uri");
+                Document d = new Document((String) td.get("text"));
+                docs.put(uri, d);
+                publish(uri, d);
+                break;
+            }
+            case "textDocument/didChange": {
+                String uri = (String) asMap(params.get("textDocument")).get("uri");
+                Document d = docs.get(uri);
+                if (d == null) break;
+                for (Object o : (List<?>) params.get("contentChanges")) {
+                    applyChange(d, asMap(o));
+                }
+                String diff = checkIncremental ? d.checkIncremental() : null;
+                if (diff != null) logError(uri + ": análisis incremental distinto del completo, " + diff);
+                publish(uri, d);
+                break;
+            }
+            case "textDocument/didClose": {
+                String uri = (String) asMap(params.get("textDocument")).get("uri");
+                docs.remove(uri);
+                sendDiagnostics(uri, new ArrayList<>());
+                break;
+            }
+            case "shutdown":
+                send(result(id, null));
+                break;
+            case "exit":
+                running = false;
+                break;
+            default:
+                // notificaciones desconocidas se ignoran; peticiones, error
+                if (id != null) send(error(id, -32601, "Método no soportado: " + method));
+        }
+    }
+
+    private void applyChange(Document d, Map<String, Object> change) {
+        String text = (String) change.get("text");
+        Map<String, Object> range = asMap(change.get("range"));
+        if (range == null) {
+            d.replace(0, d.getText().length(), text);
+            return;
+        }
+        int start = offset(d, asMap(range.get("start")));
+        int end = offset(d, asMap(range.get("end")));
+        d.replace(start, end, text);
+    }
+
+    private int offset(Document d, Map<String, Object> pos) {
+        return d.offsetAt(((Number) pos.get("line")).intValue(), ((Number) pos.get("character")).intValue());
+    }
+
+    private void publish(String uri, Document d) throws IOException {
+        List<Object> diags = new ArrayList<>();
+        for (Document.Diagnostic dg : d.diagnostics()) {
+            Map<String, Object> range = new LinkedHashMap<>();
+            range.put("start", position(d, dg.start));
+            range.put("end", position(d, dg.end));
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("range", range);
+            m.put("severity", 1L);
+            m.put("source", "compilador");
+            m.put("message", dg.message);
+            diags.add(m);
+        }
+        sendDiagnostics(uri, diags);
+    }
+
+    private Map<String, Object> position(Document d, int offset) {
+        Map<String, Object> p = new LinkedHashMap<>();
+        p.put("line", (long) d.lineOf(offset));
+        p.put("character", (long) d.colOf(offset));
+        return p;
+    }
+
+    private void sendDiagnostics(String uri, List<Object> diags) throws IOException {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", uri);
+        params.put("diagnostics", diags);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jsonrpc", "2.0");
+        m.put("method", "textDocument/publishDiagnostics");
+        m.put("params", params);
+        send(m);
+    }
+
+    private void logError(String message) throws IOException {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("type", 1L); // Error
+        params.put("message", message);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jsonrpc", "2.0");
+        m.put("method", "window/logMessage");
+        m.put("params", params);
+        send(m);
+    }
+
+    private Map<String, Object> result(Object id, Object res) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jsonrpc", "2.0");
+        m.put("id", id);
+        m.put("result", res);
+        return m;
+    }
+
+    private Map<String, Object> error(Object id, int code, String message) {
+        Map<String, Object> e = new LinkedHashMap<>();
+        e.put("code", (long) code);
+        e.put("message", message);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jsonrpc", "2.0");
+        m.put("id", id);
+        m.put("error", e);
+        return m;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object o) {
+        return (o instanceof Map) ? (Map<String, Object>) o : null;
+    }
+
+    // --------- Transporte ---------
+
+    // Lee "Content-Length: N\r\n...\r\n\r\n" + N bytes; null si se acaba la entrada
+    private String readMessage() throws IOException {
+        int length = -1;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null) return null;
+            if (header.isEmpty()) break;
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                length = Integer.parseInt(header.substring(colon + 1).trim());
+            }
+        }
+        if (length < 0) return "";
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int k = in.read(body, read, length - read);
+            if (k < 0) return null;
+            read += k;
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') return line.toString("US-ASCII").trim();
+            line.write(c);
+        }
+        return line.size() == 0 ? null : line.toString("US-ASCII").trim();
+    }
+
+    private void send(Map<String, Object> msg) throws IOException {
+        byte[] body = Json.write(msg).getBytes(StandardCharsets.UTF_8);
+        out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+}
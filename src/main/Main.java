@@ -1,55 +1,322 @@
 package main;
 
 import errors.ErrorManager;
+import ir.IRBuilder;
+import ir.Inliner;
+import ir.Interpreter;
+import ir.OptCheck;
+import ir.Optimizer;
+import ir.PassManager;
+import ir.Peephole;
+import ir.IRObject;
+import ir.IRObjectWriter;
+import ir.Profile;
 import lexer.Lexer;
+import lexer.PipelinedLexer;
 import lexer.Token;
+import lexer.TokenRing;
+import lexer.TokenStream;
 import lexer.TokenType;
+import lsp.LanguageServer;
 import parser.Parser;
+import sem.SymbolTable;
+import util.OutputDir;
 import util.SourceReader;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class Main {
 
+    // Opciones de compilación de la línea de órdenes
+    private static final class Options {
+        boolean irBin, instrument, checkOpt, pipeline, watch;
+        int optLevel = -1; // -1: sin -O (0, o el de --check-opt)
+        Profile profile;
+        int tokensEvery = 1; // 1 = todos, 0 = no se escribe tokens.txt, N = uno de cada N
+        final Inliner.Config inline = new Inliner.Config();
+        final List<Path> sources = new ArrayList<>();
+    }
+
     private static void writeUtf8(Path file, String content) throws IOException {
         Files.write(file, content.getBytes(StandardCharsets.UTF_8));
     }
 
+    // Con ring, el lexer va en su propio hilo y pasa los tokens por la cola
+    private static TokenStream lexer(SourceReader src, ErrorManager em, TokenRing ring) {
+        return ring == null ? new Lexer(src, em) : new PipelinedLexer(src, em, ring);
+    }
+
+    // -O: optimiza ir y deja en out/ el informe de las pasadas (y el de --check-opt)
+    private static void optimize(Options o, IRBuilder ir, Set<String> vars, OutputDir out) throws IOException {
+        OptCheck check = o.checkOpt ? new OptCheck(ir.getInstrs(), vars) : null;
+        PassManager pm = Optimizer.pipeline(o.optLevel, ir, vars);
+        pm.run();
+        out.write("passes.txt", pm.getReport());
+        if (check != null) {
+            out.write("check-opt.txt", check.check(ir.getInstrs()));
+            if (!check.isOk()) System.out.println("Aviso: el código optimizado no hace lo mismo. Ver out/check-opt.txt");
+        }
+    }
+
+    // Compilación separada: cada fuente a out/obj/<nombre>.irb y enlace en out/intermediate.txt
+    private static void buildUnits(Options o, OutputDir out) throws IOException {
+        UnitBuild build = new UnitBuild(o.sources, out.resolve("obj"), o.inline);
+        IRBuilder ir = build.run();
+        if (ir == null) {
+            // SIEMPRE generamos entregables (como con un fuente): lo enlazado, o vacíos si no se llegó
+            // a enlazar, para que no queden en out/ los de la compilación anterior
+            IRBuilder partial = build.getLinked() != null ? build.getLinked() : new IRBuilder();
+            writeUnits(o, out, build.getSymbols(), partial);
+            out.write("errors.txt", String.join("\n", build.getErrors()));
+            System.out.println("Errores detectados. Ver out/errors.txt");
+            return;
+        }
+        if (o.optLevel > 0) {
+            Set<String> vars = new HashSet<>();
+            for (SymbolTable.Entry e : build.getSymbols()) vars.add(e.name);
+            optimize(o, ir, vars, out);
+        }
+        writeUnits(o, out, build.getSymbols(), ir);
+        out.write("errors.txt", "");
+        System.out.println("OK. " + build.getSummary() + " (symbols.txt, intermediate.txt en out/)");
+    }
+
+    private static void writeUnits(Options o, OutputDir out, List<SymbolTable.Entry> symbols, IRBuilder ir)
+            throws IOException {
+        out.write("symbols.txt", w -> SymbolTable.writeTo(w, symbols));
+        out.write("intermediate.txt", w -> ir.writeTo(w));
+        if (o.irBin) out.writeFile("intermediate.irb", f -> IRObjectWriter.write(ir, f));
+    }
+
+    // Ejecuta un IR y deja los contadores en profileFile (por defecto out/profile.txt si está instrumentado)
+    private static void run(Path irFile, Path profileFile) throws IOException {
+        IRBuilder ir = irFile.toString().endsWith(".irb")
+                ? IRObject.open(irFile).toBuilder()
+                : IRBuilder.fromText(new String(Files.readAllBytes(irFile), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+        Interpreter it;
+        try {
+            it = new Interpreter(ir.getInstrs());
+            it.run(out);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            out.println("Error de ejecución: " + ex.getMessage());
+            return;
+        } finally {
+            out.flush();
+        }
+        if (profileFile == null && it.isInstrumented()) profileFile = Paths.get("out", "profile.txt");
+        if (profileFile != null) {
+            Path dir = profileFile.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            it.getProfile().write(profileFile);
+        }
+    }
+
+    /**
+     * --check-opt-random: --check-opt sobre n programas aleatorios (semillas
+     * seed, seed+1...). Cuenta por regla en cuántos se aplicó y deja los que
+     * fallan en out/check-opt-random/. false si alguno se comporta distinto.
+     */
+    private static boolean checkOptRandom(int n, long seed) throws IOException {
+        List<String> rules = Peephole.ruleNames();
+        long[] programs = new long[rules.size()], hits = new long[rules.size()], bad = new long[rules.size()];
+        int failed = 0, unchecked = 0;
+        Path dir = Paths.get("out", "check-opt-random");
+        for (long s = seed; s < seed + n; s++) {
+            String text = RandomProgram.generate(s);
+            SourceReader src = new SourceReader(text);
+            ErrorManager em = new ErrorManager(src.lines());
+            Parser p = new Parser(new Lexer(src, em), em);
+            p.parseProgram();
+            String report;
+            List<String> different = new ArrayList<>();
+            if (em.hasErrors()) {
+                report = String.join("\n", em.getErrors()); // fallo del generador
+                different.add("(no compila)");
+            } else {
+                IRBuilder ir = p.getIR();
+                Set<String> vars = p.getSymbolTable().names();
+                OptCheck check = new OptCheck(ir.getInstrs(), vars);
+                Optimizer.pipeline(Optimizer.MAX_LEVEL, ir, vars).run();
+                report = check.check(ir.getInstrs());
+                different = check.getDifferent();
+                if (!check.isChecked()) unchecked++;
+                for (int r = 0; r < rules.size(); r++) {
+                    long h = check.getHits(rules.get(r));
+                    if (h > 0) programs[r]++;
+                    hits[r] += h;
+                    if (different.contains(rules.get(r))) bad[r]++;
+                }
+            }
+            if (!different.isEmpty()) {
+                failed++;
+                Files.createDirectories(dir);
+                writeUtf8(dir.resolve(s + ".mi"), text);
+                writeUtf8(dir.resolve(s + ".txt"), report);
+                System.out.println("semilla " + s + ": DISTINTO en " + String.join(", ", different));
+            }
+        }
+        System.out.printf("%-22s %9s %10s %9s%n", "regla", "programas", "veces", "distinto");
+        for (int r = 0; r < rules.size(); r++) {
+            System.out.printf("%-22s %9d %10d %9d%n", rules.get(r), programs[r], hits[r], bad[r]);
+        }
+        System.out.printf("%d programas (semillas %d..%d): %d distintos, %d sin comprobar (no terminan)%n",
+                n, seed, seed + n - 1, failed, unchecked);
+        if (failed > 0) System.out.println("Ver out/check-opt-random/<semilla>.mi y .txt");
+        return failed == 0;
+    }
+
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("Uso: java Main <ruta_fichero_fuente>");
+        if (args.length >= 1 && args[0].equals("--lsp")
+                && (args.length == 1 || (args.length == 2 && args[1].equals("--check-incremental")))) {
+            // Modo editor: JSON-RPC por stdin/stdout, sin escribir nada en out/
+            LanguageServer server = new LanguageServer(System.in, System.out);
+            server.setCheckIncremental(args.length == 2);
+            server.run();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--ir-to-bin")) {
+            // intermediate.txt -> .irb
+            IRBuilder ir = IRBuilder.fromText(new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8));
+            IRObjectWriter.write(ir, Paths.get(args[2]));
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--ir-to-text")) {
+            // .irb -> intermediate.txt
+            writeUtf8(Paths.get(args[2]), IRObject.open(Paths.get(args[1])).toBuilder().getCode());
             return;
         }
 
-        Path input = Paths.get(args[0]);
-        Path outDir = Paths.get("out");
-        Files.createDirectories(outDir);
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--check-opt-random")) {
+            int n;
+            long seed;
+            try {
+                n = Integer.parseInt(args[1]);
+                seed = args.length == 3 ? Long.parseLong(args[2]) : 1;
+            } catch (NumberFormatException ex) {
+                n = -1;
+                seed = 0;
+            }
+            if (n > 0) {
+                if (!checkOptRandom(n, seed)) System.exit(1); // para que falle quien lo lance (ant check-opt)
+                return;
+            }
+        }
+
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--run")) {
+            run(Paths.get(args[1]), args.length == 3 ? Paths.get(args[2]) : null);
+            return;
+        }
 
+        Options o = new Options();
+        boolean badArgs = false;
+        for (String a : args) {
+            if (a.equals("--ir-bin")) o.irBin = true;
+            else if (a.equals("--no-tokens")) o.tokensEvery = 0;
+            else if (a.equals("--pgo-instrument")) o.instrument = true;
+            else if (a.equals("-O")) o.optLevel = Optimizer.MAX_LEVEL;
+            else if (a.matches("-O[0-9]")) {
+                o.optLevel = a.charAt(2) - '0';
+                if (o.optLevel > Optimizer.MAX_LEVEL) badArgs = true;
+            }
+            else if (a.equals("--check-opt")) o.checkOpt = true;
+            else if (a.equals("--pipeline")) o.pipeline = true;
+            else if (a.equals("--watch")) o.watch = true;
+            else if (a.startsWith("--pgo-use=")) o.profile = Profile.read(Paths.get(a.substring("--pgo-use=".length())));
+            else if (a.startsWith("--tokens-sample=")) {
+                try {
+                    o.tokensEvery = Integer.parseInt(a.substring("--tokens-sample=".length()));
+                } catch (NumberFormatException ex) {
+                    badArgs = true;
+                }
+                if (o.tokensEvery < 1) badArgs = true;
+            }
+            else if (a.equals("--no-inline")) o.inline.enabled = false;
+            else if (a.startsWith("--inline-size=")) {
+                try {
+                    o.inline.maxSize = Integer.parseInt(a.substring("--inline-size=".length()));
+                } catch (NumberFormatException ex) {
+                    badArgs = true;
+                }
+            }
+            else if (a.startsWith("-")) badArgs = true;
+            else o.sources.add(Paths.get(a));
+        }
+        if (o.optLevel < 0) o.optLevel = o.checkOpt ? Optimizer.MAX_LEVEL : 0;
+        // con varios fuentes no hay tokens.txt ni PGO (los contadores serían de cada unidad)
+        if (o.sources.size() > 1 && (o.tokensEvery != 1 || o.pipeline || o.instrument || o.profile != null)) badArgs = true;
+        if (badArgs || o.sources.isEmpty()) {
+            System.out.println("Uso: java Main [-O | -O0 | -O1 | -O2] [--check-opt] [--ir-bin] [--pipeline] [--watch]");
+            System.out.println("                [--no-inline] [--inline-size=N] [--no-tokens | --tokens-sample=N]");
+            System.out.println("                [--pgo-instrument] [--pgo-use=<profile.txt>] <ruta_fichero_fuente>");
+            System.out.println("     java Main [-O | -O0 | -O1 | -O2] [--check-opt] [--ir-bin] [--no-inline] [--inline-size=N] [--watch]");
+            System.out.println("                <fuente> <fuente>...");
+            System.out.println("     java Main --lsp [--check-incremental]");
+            System.out.println("     java Main --ir-to-bin <intermediate.txt> <fichero.irb>");
+            System.out.println("     java Main --ir-to-text <fichero.irb> <intermediate.txt>");
+            System.out.println("     java Main --run <intermediate.txt|fichero.irb> [profile.txt]");
+            System.out.println("     java Main --check-opt-random <N> [semilla]");
+            return;
+        }
+
+        // En --watch los ficheros de out/ solo se sustituyen (rename atómico) si cambian
+        OutputDir out = new OutputDir(Paths.get("out"), o.watch);
+        TokenRing ring = o.pipeline ? new TokenRing(TokenRing.DEFAULT_CAPACITY) : null; // una cola para todo
+        if (o.watch) {
+            new Watch(o.sources, () -> build(o, out, ring), out).run();
+        } else {
+            build(o, out, ring);
+        }
+    }
+
+    private static void build(Options o, OutputDir out, TokenRing ring) throws IOException {
+        if (o.sources.size() > 1) buildUnits(o, out);
+        else compile(o, o.sources.get(0), out, ring);
+    }
+
+    private static void compile(Options o, Path input, OutputDir out, TokenRing ring) throws IOException {
         // =========================
         // PASADA 1: SOLO LÉXICO -> tokens.txt
         // =========================
-        ErrorManager emLex = new ErrorManager();
-        Lexer lexer1 = new Lexer(new SourceReader(input), emLex);
+        SourceReader src1 = new SourceReader(input);
+        ErrorManager emLex = new ErrorManager(src1.lines());
 
-        List<String> tokenLines = new ArrayList<>();
-        while (true) {
-            Token t = lexer1.nextToken();
-            tokenLines.add(t.toString());
-            if (t.type == TokenType.EOF) {
-                break;
+        // El lexer recorre todo el fichero aunque no se pida tokens.txt (hay que ver los errores)
+        try (TokenStream lexer1 = lexer(src1, emLex, ring)) {
+            if (o.tokensEvery == 0) {
+                out.delete("tokens.txt");
+                while (lexer1.nextToken().type != TokenType.EOF) { }
+            } else {
+                out.write("tokens.txt", w -> {
+                    for (int i = 0; ; i++) {
+                        Token t = lexer1.nextToken();
+                        if (i % o.tokensEvery == 0) {
+                            if (i > 0) w.write('\n');
+                            t.writeTo(w, src1.lines());
+                        }
+                        if (t.type == TokenType.EOF) {
+                            break;
+                        }
+                    }
+                });
             }
         }
-        writeUtf8(outDir.resolve("tokens.txt"), String.join("\n", tokenLines));
 
         // Si hay errores léxicos, los dejamos en errors.txt y paramos aquí (recomendado)
         if (emLex.hasErrors()) {
-            writeUtf8(outDir.resolve("errors.txt"), String.join("\n", emLex.getErrors()));
+            out.write("errors.txt", String.join("\n", emLex.getErrors()));
             System.out.println("Errores léxicos. Generado out/tokens.txt. Ver out/errors.txt");
             return;
         }
@@ -57,21 +324,44 @@ public class Main {
         // =========================
         // PASADA 2: PARSER (nuevo lexer)
         // =========================
-        ErrorManager emSyn = new ErrorManager();
-        Lexer lexer2 = new Lexer(new SourceReader(input), emSyn);
+        Profile profile = o.profile;
+        SourceReader src2;
+        ErrorManager emSyn;
+        Parser p;
+        while (true) {
+            src2 = new SourceReader(input);
+            emSyn = new ErrorManager(src2.lines());
+            try (TokenStream lexer2 = lexer(src2, emSyn, ring)) {
+                p = new Parser(lexer2, emSyn);
+                p.setInlineConfig(o.inline);
+                p.setInstrument(o.instrument);
+                p.setProfile(profile);
+                p.parseProgram();
+            }
+
+            // un perfil con más contadores que sitios es de otro programa: se repite sin él
+            if (profile == null || profile.size() <= p.getCounterCount()) break;
+            System.out.println("Aviso: el perfil no corresponde a este programa ("
+                    + profile.size() + " contadores, " + p.getCounterCount() + " esperados); se compila sin él");
+            profile = null;
+        }
 
-        Parser p = new Parser(lexer2, emSyn);
-        p.parseProgram();
+        // Con errores el IR puede estar a medias (etiquetas sin definir...): solo se optimiza si no hay
+        if (o.optLevel > 0 && !emSyn.hasErrors()) optimize(o, p.getIR(), p.getSymbolTable().names(), out);
 
         // SIEMPRE generamos entregables
-        writeUtf8(outDir.resolve("symbols.txt"), p.getSymbolTable().dump());
-        writeUtf8(outDir.resolve("intermediate.txt"), p.getIR().getCode());
+        Parser parser = p;
+        out.write("symbols.txt", w -> parser.getSymbolTable().writeTo(w));
+        out.write("intermediate.txt", w -> parser.getIR().writeTo(w));
+        if (o.irBin) out.writeFile("intermediate.irb", f -> IRObjectWriter.write(parser.getIR(), f));
+        if (p.getInlineReport() != null) out.write("inline.txt", p.getInlineReport());
+        if (profile != null) out.write("pgo.txt", p.getPgoReport(src2.lines()));
 
         if (emSyn.hasErrors()) {
-            writeUtf8(outDir.resolve("errors.txt"), String.join("\n", emSyn.getErrors()));
+            out.write("errors.txt", String.join("\n", emSyn.getErrors()));
             System.out.println("Errores detectados. Ver out/errors.txt");
         } else {
-            writeUtf8(outDir.resolve("errors.txt"), "");
+            out.write("errors.txt", "");
             System.out.println("OK. (tokens.txt, symbols.txt, intermediate.txt en out/)");
         }
 
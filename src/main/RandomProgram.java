@@ -0,0 +1,167 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Programas aleatorios (siempre correctos y que terminan) para probar el
+ * optimizador con --check-opt-random. La misma semilla da el mismo programa.
+ *
+ * Solo se asigna a a, b, c, p, q y a las locales: i, j y k son los
+ * contadores de los bucles (uno por profundidad), con límites constantes. Se buscan a propósito las formas que
+ * reescribe la mirilla: constantes, x + 0, - -x, !!p, comparaciones
+ * negadas o guardadas en un bool, saltos a la siguiente instrucción...
+ */
+public class RandomProgram {
+
+    private static final String[] INTS = { "a", "b", "c", "i", "j", "k" };
+    private static final String[] LOOP = { "i", "j", "k" }; // contador del bucle de cada profundidad
+    private static final String[] ASSIGNABLE = { "a", "b", "c" };
+    private static final String[] BOOLS = { "p", "q" };
+    private static final String[] ARITH = { "+", "-", "*", "+", "-", "*", "/", "%" };
+    private static final String[] CMP = { "<", "<=", ">", ">=", "==", "!=" };
+
+    private final Random rnd;
+    private final StringBuilder out = new StringBuilder();
+    private final List<String> procs = new ArrayList<>();
+
+    private RandomProgram(long seed) {
+        rnd = new Random(seed);
+    }
+
+    public static String generate(long seed) {
+        return new RandomProgram(seed).program();
+    }
+
+    private String program() {
+        out.append("program {\n");
+        for (String v : INTS) out.append("  int ").append(v).append(";\n");
+        for (String v : BOOLS) out.append("  bool ").append(v).append(";\n");
+        int n = rnd.nextInt(4);
+        for (int k = 0; k < n; k++) proc("f" + k);
+        for (String v : INTS) out.append("  ").append(v).append(" = ").append(rnd.nextInt(6)).append(";\n");
+        for (String v : BOOLS) out.append("  ").append(v).append(" = ").append(rnd.nextBoolean()).append(";\n");
+        int stmts = 3 + rnd.nextInt(8);
+        for (int k = 0; k < stmts; k++) {
+            if (!procs.isEmpty() && rnd.nextInt(10) < 3) call(2);
+            else stmt(0, 2);
+        }
+        out.append("  print(a); print(b); print(c); print(p); print(q);\n}\n");
+        return out.toString();
+    }
+
+    // Solo llama a los declarados antes (sin recursión)
+    private void proc(String name) {
+        out.append("  proc ").append(name).append("(int x, bool z) {\n");
+        out.append("    int y;\n");
+        out.append("    y = x * ").append(atom(intExpr(1))).append(";\n");
+        out.append("    if (z) c = c + y; else c = c - y;\n");
+        if (!procs.isEmpty() && rnd.nextBoolean()) call(4);
+        out.append("    print(c);\n  }\n");
+        procs.add(name);
+    }
+
+    private void call(int ind) {
+        indent(ind).append(pick(procs.toArray(new String[0]))).append('(')
+                .append(intExpr(1)).append(", ").append(boolExpr(1)).append(");\n");
+    }
+
+    private void stmt(int depth, int ind) {
+        int r = rnd.nextInt(100);
+        if (depth > 2 || r < 30) {
+            indent(ind).append(pick(ASSIGNABLE)).append(" = ").append(intExpr(0)).append(";\n");
+        } else if (r < 40) {
+            indent(ind).append(pick(BOOLS)).append(" = ").append(boolExpr(0)).append(";\n");
+        } else if (r < 50) {
+            indent(ind).append("print(").append(rnd.nextInt(10) < 7 ? intExpr(0) : boolExpr(0)).append(");\n");
+        } else if (r < 65) {
+            indent(ind).append("if (").append(boolExpr(0)).append(")\n");
+            if (rnd.nextBoolean()) {
+                // con llaves, para que el else no sea de un if de dentro
+                indent(ind).append("{\n");
+                stmt(depth + 1, ind + 2);
+                indent(ind).append("}\n");
+                indent(ind).append("else\n");
+            }
+            stmt(depth + 1, ind + 2);
+        } else if (r < 77) {
+            String v = LOOP[depth];
+            int lo = rnd.nextInt(4);
+            int step = 1 + rnd.nextInt(3);
+            String cmp = step == 1 ? pick(new String[] { "<", "<=", "!=" }) : pick(new String[] { "<", "<=" });
+            int hi = lo + (cmp.equals("!=") ? 0 : rnd.nextInt(2)) + step * rnd.nextInt(8);
+            indent(ind).append("for (").append(v).append(" = ").append(lo).append("; ").append(v).append(' ')
+                    .append(cmp).append(' ').append(hi).append("; ").append(v).append(" = ").append(v)
+                    .append(" + ").append(step).append(")\n");
+            stmt(depth + 1, ind + 2);
+        } else if (r < 87) {
+            String v = LOOP[depth];
+            indent(ind).append("{ ").append(v).append(" = 0;\n");
+            indent(ind).append("while (").append(v).append(" < ").append(rnd.nextInt(7)).append(") {\n");
+            stmt(depth + 1, ind + 2);
+            indent(ind + 2).append(v).append(" = ").append(v).append(" + 1;\n");
+            indent(ind).append("} }\n");
+        } else {
+            indent(ind).append("{\n");
+            if (rnd.nextInt(10) < 3) {
+                indent(ind + 2).append("int a;\n");
+                indent(ind + 2).append("a = ").append(rnd.nextInt(10)).append(";\n");
+            }
+            int n = 1 + rnd.nextInt(3);
+            for (int k = 0; k < n; k++) stmt(depth + 1, ind + 2);
+            indent(ind).append("}\n");
+        }
+    }
+
+    private String intExpr(int depth) {
+        int r = rnd.nextInt(100);
+        if (depth > 3 || r < 30) return rnd.nextBoolean() ? String.valueOf(rnd.nextInt(10)) : pick(INTS);
+        if (r < 38) return "-" + atom(intExpr(depth + 1));
+        if (r < 42) return "-(-" + atom(intExpr(depth + 1)) + ")";
+        if (r < 48) return identity(intExpr(depth + 1));
+        if (r < 52) return "(" + intExpr(depth + 1) + ")";
+        String op = pick(ARITH);
+        if (op.equals("/") || op.equals("%")) {
+            // casi siempre divisor constante; a veces una variable, que puede ser 0
+            String d = rnd.nextInt(10) < 8 ? String.valueOf(1 + rnd.nextInt(5)) : pick(ASSIGNABLE);
+            return intExpr(depth + 1) + " " + op + " " + d;
+        }
+        return intExpr(depth + 1) + " " + op + " " + intExpr(depth + 1);
+    }
+
+    // x + 0, x * 1, x - x...: las identidades algebraicas
+    private String identity(String x) {
+        switch (rnd.nextInt(6)) {
+            case 0: return x + " + 0";
+            case 1: return "0 + " + atom(x);
+            case 2: return atom(x) + " * 1";
+            case 3: return atom(x) + " * 0";
+            case 4: return atom(x) + " - 0";
+            default: return atom(x) + " - " + atom(x);
+        }
+    }
+
+    private String boolExpr(int depth) {
+        int r = rnd.nextInt(100);
+        if (depth > 2 || r < 20) return pick(new String[] { "true", "false", "p", "q" });
+        if (r < 50) return intExpr(depth + 1) + " " + pick(CMP) + " " + intExpr(depth + 1);
+        if (r < 60) return "!(" + boolExpr(depth + 1) + ")";
+        if (r < 65) return "!(!(" + boolExpr(depth + 1) + "))";
+        if (r < 72) return "(" + boolExpr(depth + 1) + ") " + pick(new String[] { "==", "!=" }) + " (" + boolExpr(depth + 1) + ")";
+        return boolExpr(depth + 1) + " " + pick(new String[] { "&&", "||" }) + " " + boolExpr(depth + 1);
+    }
+
+    private static String atom(String e) {
+        return e.matches("[a-z]+|[0-9]+") ? e : "(" + e + ")";
+    }
+
+    private String pick(String[] options) {
+        return options[rnd.nextInt(options.length)];
+    }
+
+    private StringBuilder indent(int n) {
+        for (int k = 0; k < n; k++) out.append(' ');
+        return out;
+    }
+}
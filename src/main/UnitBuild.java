@@ -0,0 +1,215 @@
+package main;
+
+import errors.ErrorManager;
+import ir.IRBuilder;
+import ir.IRObject;
+import ir.IRObjectWriter;
+import ir.Inliner;
+import ir.Linker;
+import ir.Unit;
+import lexer.Lexer;
+import parser.InterfaceScanner;
+import parser.Parser;
+import sem.Export;
+import sem.SymbolTable;
+import util.SourceReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compilación separada: cada fuente es una unidad (un "program { ... }"
+ * normal) cuyas variables globales y procedimientos ven las demás.
+ *
+ *  1. Se leen los exports de cada fuente (InterfaceScanner, sin compilar).
+ *  2. Cada unidad se compila por su cuenta a objDir/nombre.irb con los
+ *     exports de las demás como importados; las que hay que compilar van
+ *     en paralelo. Si el fuente y lo importado no han cambiado desde la
+ *     última vez, se reutiliza el objeto.
+ *  3. El Linker junta los objetos en un único programa.
+ */
+public class UnitBuild {
+
+    private final List<Path> sources;
+    private final Path objDir;
+    private final Inliner.Config inline;
+
+    private final List<String> errors = new ArrayList<>();
+    private List<SymbolTable.Entry> symbols = new ArrayList<>();
+    private IRBuilder linked;
+    private int compiled, reused;
+
+    public UnitBuild(List<Path> sources, Path objDir, Inliner.Config inline) {
+        this.sources = sources;
+        this.objDir = objDir;
+        this.inline = inline;
+    }
+
+    // Fuente leído y sus exports
+    private static final class Source {
+        final Path path;
+        final String name;
+        final String text;
+        final long hash;
+        final List<Export> exports;
+
+        Source(Path path, String name, byte[] bytes) {
+            this.path = path;
+            this.name = name;
+            this.text = new String(bytes);
+            this.hash = hash(bytes);
+            this.exports = InterfaceScanner.scan(new Lexer(new SourceReader(text), new ErrorManager(null)));
+        }
+    }
+
+    // Resultado de compilar una unidad: el objeto o los errores
+    private static final class Result {
+        Unit unit;
+        List<String> errors = new ArrayList<>();
+    }
+
+    public List<String> getErrors() { return errors; }
+
+    /** Tabla de símbolos del programa enlazado. */
+    public List<SymbolTable.Entry> getSymbols() { return symbols; }
+
+    /** Programa enlazado, aunque haya errores de enlace (null si no se llegó a enlazar). */
+    public IRBuilder getLinked() { return linked; }
+
+    public String getSummary() {
+        return String.format("%d unidades: %d compiladas, %d reutilizadas", compiled + reused, compiled, reused);
+    }
+
+    /** Compila lo que haga falta y enlaza; null si hay errores (ver getErrors()). */
+    public IRBuilder run() throws IOException {
+        List<Source> srcs = new ArrayList<>();
+        Map<String, String> owner = new HashMap<>(); // símbolo o nombre de unidad -> fuente
+        for (Path p : sources) {
+            String file = p.getFileName().toString();
+            String name = file.contains(".") ? file.substring(0, file.lastIndexOf('.')) : file;
+            String prev = owner.putIfAbsent("unidad " + name, p.toString());
+            if (prev != null) {
+                errors.add(p + ": [LINK] Unidad '" + name + "' repetida (también " + prev + ")");
+                continue;
+            }
+            Source s = new Source(p, name, Files.readAllBytes(p));
+            for (Export e : s.exports) {
+                prev = owner.putIfAbsent(e.name, p.toString());
+                if (prev != null) errors.add(p + ": [LINK] '" + e.name + "' ya está definido en " + prev);
+            }
+            srcs.add(s);
+        }
+        if (!errors.isEmpty()) return null;
+
+        Files.createDirectories(objDir);
+        List<Unit> units = new ArrayList<>(Collections.<Unit>nCopies(srcs.size(), null));
+        List<Callable<Result>> tasks = new ArrayList<>();
+        List<Integer> taskUnit = new ArrayList<>();
+        for (int i = 0; i < srcs.size(); i++) {
+            Source s = srcs.get(i);
+            List<Export> imports = new ArrayList<>();
+            for (Source o : srcs) if (o != s) imports.addAll(o.exports);
+            long importHash = importHash(imports);
+            Path obj = objDir.resolve(s.name + ".irb");
+
+            long[] stamp = IRObject.readStamp(obj);
+            if (stamp != null && stamp[0] == s.hash && stamp[1] == importHash) {
+                units.set(i, IRObject.open(obj).toUnit(s.name));
+                reused++;
+            } else {
+                tasks.add(() -> compile(s, imports, importHash, obj));
+                taskUnit.add(i);
+            }
+        }
+        compiled = tasks.size();
+
+        if (!tasks.isEmpty()) {
+            int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Result>> done = pool.invokeAll(tasks);
+                for (int k = 0; k < done.size(); k++) {
+                    Result r = done.get(k).get();
+                    errors.addAll(r.errors);
+                    units.set(taskUnit.get(k), r.unit);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Compilación interrumpida", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+                throw new IllegalStateException(ex.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (!errors.isEmpty()) return null;
+
+        Linker linker = new Linker(units);
+        linked = linker.link();
+        for (String e : linker.getErrors()) errors.add("[LINK] " + e);
+        symbols = linker.getSymbols();
+        return errors.isEmpty() ? linked : null;
+    }
+
+    // Compila una unidad y, si no tiene errores, deja su objeto en obj
+    private Result compile(Source s, List<Export> imports, long importHash, Path obj) throws IOException {
+        SourceReader src = new SourceReader(s.text);
+        ErrorManager em = new ErrorManager(src.lines());
+        Parser p = new Parser(new Lexer(src, em), em);
+        p.setInlineConfig(inline);
+        p.setImports(imports);
+        p.parseProgram();
+
+        Result r = new Result();
+        if (em.hasErrors()) {
+            for (String e : em.getErrors()) r.errors.add(s.path + ": " + e);
+            Files.deleteIfExists(obj); // que no se reutilice uno antiguo
+            return r;
+        }
+        List<String> exports = new ArrayList<>();
+        for (Export e : p.getExports()) exports.add(e.toString());
+        r.unit = new Unit(s.name, p.getIR(), p.getSymbolTable().entries(), exports, s.hash, importHash);
+        IRObjectWriter.write(r.unit, obj);
+        return r;
+    }
+
+    /**
+     * Lo que, aparte del fuente, cambia el código de una unidad: los exports
+     * de las demás (sin importar el orden) y las opciones del inliner.
+     */
+    private long importHash(List<Export> imports) {
+        List<String> lines = new ArrayList<>();
+        for (Export e : imports) lines.add(e.toString());
+        Collections.sort(lines);
+        lines.add(String.format("inline %b %d %d %d %d", inline.enabled, inline.maxSize, inline.loopBonus,
+                inline.singleCallMaxSize, inline.maxGrowth));
+        return hash(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Primeros 8 bytes del SHA-256
+    private static long hash(byte[] data) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(data);
+            long h = 0;
+            for (int k = 0; k < 8; k++) h = (h << 8) | (d[k] & 0xff);
+            return h;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // todas las JVM tienen SHA-256
+        }
+    }
+}
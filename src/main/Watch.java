@@ -0,0 +1,135 @@
+package main;
+
+import util.Digest;
+import util.OutputDir;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo --watch: vigila los fuentes y recompila en la misma JVM cada vez que
+ * cambian (con el JIT ya caliente y los mismos buffers de salida y cola de
+ * tokens).
+ *
+ * Se vigilan los directorios de los fuentes (así también se ven los editores
+ * que guardan escribiendo otro fichero y renombrándolo). Los eventos que
+ * llegan seguidos se agrupan: se espera a que pasen DEBOUNCE_MS sin ninguno
+ * y se recompila una sola vez. Si el contenido de los fuentes tocados no ha
+ * cambiado (solo la fecha) no se recompila.
+ */
+public class Watch {
+
+    /** Una compilación completa (la misma que sin --watch). */
+    public interface Build {
+        void run() throws IOException;
+    }
+
+    private static final long DEBOUNCE_MS = 100;
+
+    private final List<Path> sources = new ArrayList<>();
+    private final Build build;
+    private final OutputDir out;
+    private final Map<Path, Digest> seen = new HashMap<>(); // huella del contenido compilado de cada fuente
+
+    public Watch(List<Path> sources, Build build, OutputDir out) {
+        for (Path s : sources) this.sources.add(s.toAbsolutePath().normalize());
+        this.build = build;
+        this.out = out;
+    }
+
+    /** No vuelve nunca (hasta que se interrumpe el hilo o se mata el proceso). */
+    public void run() throws IOException {
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            Set<Path> dirs = new LinkedHashSet<>();
+            for (Path s : sources) dirs.add(s.getParent());
+            for (Path d : dirs) {
+                d.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+
+            changed(new TreeSet<>(sources)); // apunta el contenido actual
+            rebuild("inicio", System.nanoTime());
+            System.out.println("[watch] esperando cambios (Ctrl+C para salir)");
+
+            while (true) {
+                Set<Path> touched = new TreeSet<>();
+                long first = 0;
+                // espera al primer evento de un fuente y luego a que haya DEBOUNCE_MS de calma
+                while (touched.isEmpty()) {
+                    collect(ws.take(), touched);
+                    first = System.nanoTime();
+                }
+                WatchKey key;
+                while ((key = ws.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) collect(key, touched);
+
+                Set<Path> changed = changed(touched);
+                if (changed.isEmpty()) continue;
+                StringBuilder names = new StringBuilder();
+                for (Path p : changed) {
+                    if (names.length() > 0) names.append(", ");
+                    names.append(p.getFileName());
+                }
+                rebuild(names.toString(), first);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Los fuentes a los que se refieren los eventos de key
+    private void collect(WatchKey key, Set<Path> touched) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                touched.addAll(sources); // se han perdido eventos: puede ser cualquiera
+                continue;
+            }
+            Path p = dir.resolve((Path) ev.context());
+            if (sources.contains(p)) touched.add(p);
+        }
+        key.reset();
+    }
+
+    // De los fuentes tocados, los que tienen otro contenido que en la última compilación
+    private Set<Path> changed(Set<Path> touched) throws IOException {
+        Set<Path> out = new TreeSet<>();
+        for (Path p : touched) {
+            Digest d = null; // borrado (o a medio renombrar)
+            if (Files.isRegularFile(p)) d = Digest.of(p);
+            boolean known = seen.containsKey(p);
+            Digest old = seen.put(p, d);
+            if (!known || !Objects.equals(old, d)) out.add(p);
+        }
+        return out;
+    }
+
+    private void rebuild(String what, long since) {
+        long start = System.nanoTime();
+        try {
+            build.run();
+        } catch (IOException | RuntimeException ex) {
+            // un fallo (fuente borrado, error interno...) no termina el modo watch
+            System.out.println("[watch] error: " + ex);
+        }
+        long end = System.nanoTime();
+        int[] counts = out.takeCounts();
+        System.out.printf("[watch] %s: compilado en %d ms (%d ms desde el cambio); out/: %d reescritos, %d sin cambios%n",
+                what, (end - start) / 1_000_000, (end - since) / 1_000_000, counts[0], counts[1]);
+        System.out.flush();
+    }
+}
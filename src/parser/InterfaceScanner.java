@@ -0,0 +1,104 @@
+package parser;
+
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
+import sem.Export;
+import sem.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lectura rápida de lo que exporta una unidad: las declaraciones del bloque
+ * principal (variables y cabeceras de procedimientos) sin analizar los
+ * cuerpos, que se saltan contando llaves.
+ *
+ * No informa de errores: se para en lo primero que no encaje y devuelve lo
+ * leído hasta ahí. Los errores los da después la compilación de verdad.
+ */
+public final class InterfaceScanner {
+
+    private final TokenStream in;
+    private Token t;
+
+    private InterfaceScanner(TokenStream in) {
+        this.in = in;
+    }
+
+    public static List<Export> scan(TokenStream in) {
+        InterfaceScanner s = new InterfaceScanner(in);
+        List<Export> out = new ArrayList<>();
+        s.advance();
+        if (!s.accept(TokenType.PROGRAM) || !s.accept(TokenType.LBRACE)) return out;
+        while (true) {
+            Type type = s.type();
+            if (type != null) {
+                String name = s.t.lexeme;
+                if (!s.accept(TokenType.ID) || !s.accept(TokenType.SEMI)) return out;
+                out.add(Export.var(name, type));
+            } else if (s.accept(TokenType.PROC)) {
+                Export p = s.procHeader();
+                if (p == null) return out;
+                out.add(p);
+                if (!s.skipBlock()) return out;
+            } else {
+                return out;
+            }
+        }
+    }
+
+    // nombre ( [tipo id {, tipo id}] ) con 'proc' ya leído
+    private Export procHeader() {
+        String name = t.lexeme;
+        if (!accept(TokenType.ID) || !accept(TokenType.LPAREN)) return null;
+        List<String> params = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        if (!accept(TokenType.RPAREN)) {
+            while (true) {
+                Type type = type();
+                String param = t.lexeme;
+                if (type == null || !accept(TokenType.ID)) return null;
+                types.add(type);
+                params.add(param);
+                if (accept(TokenType.RPAREN)) break;
+                if (!accept(TokenType.COMMA)) return null;
+            }
+        }
+        return Export.proc(name, params, types);
+    }
+
+    // { ... } con las llaves equilibradas
+    private boolean skipBlock() {
+        if (!accept(TokenType.LBRACE)) return false;
+        int depth = 1;
+        while (depth > 0) {
+            if (t.type == TokenType.EOF) return false;
+            if (t.type == TokenType.LBRACE) depth++;
+            else if (t.type == TokenType.RBRACE) depth--;
+            advance();
+        }
+        return true;
+    }
+
+    private Type type() {
+        Type type;
+        if (t.type == TokenType.INT) type = Type.INT;
+        else if (t.type == TokenType.BOOL) type = Type.BOOL;
+        else if (t.type == TokenType.CHAR) type = Type.CHAR;
+        else return null;
+        advance();
+        return type;
+    }
+
+    private boolean accept(TokenType type) {
+        if (t.type != type) return false;
+        advance();
+        return true;
+    }
+
+    private void advance() {
+        t = in.nextToken();
+        while (t.type == TokenType.ERROR) t = in.nextToken();
+    }
+}
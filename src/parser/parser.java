@@ -1,26 +1,133 @@
 package parser;
 
 import errors.ErrorManager;
-import lexer.Lexer;
 import lexer.Token;
+import lexer.TokenStream;
 import lexer.TokenType;
+import sem.Export;
 import sem.SymbolTable;
 import sem.Type;
 import ir.IRBuilder;
 import ir.ExprRes;
+import ir.Inliner;
+import ir.Instr;
+import ir.Profile;
+import util.LineIndex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 public class Parser {
-    private final Lexer lexer;
+
+    /**
+     * Aviso de entrada/salida de bloques '{...}' y de dónde empieza cada una
+     * de sus sentencias (lo usa el modo editor para re-analizar por trozos).
+     */
+    public interface BlockListener {
+        void blockEntered(Context ctx);
+        /** Empieza una sentencia del bloque más interno o, si no viene otra, se acaban. */
+        void statementBoundary(Context ctx);
+        void blockExited();
+    }
+
+    /**
+     * Lo declarado en un punto del programa: los scopes abiertos, las
+     * firmas de los procedimientos y el procedimiento en el que se está (o
+     * null). Basta para volver a analizar ese trozo suelto (parseNestedBlock,
+     * parseStatements).
+     */
+    public static final class Context {
+        final SymbolTable.Snapshot scopes;
+        final List<Export> procs;
+        final String proc;
+
+        Context(SymbolTable.Snapshot scopes, List<Export> procs, String proc) {
+            this.scopes = scopes;
+            this.procs = procs;
+            this.proc = proc;
+        }
+    }
+
+    private final TokenStream lexer;
     private final ErrorManager err;
     private Token lookahead;
 
     // Semántica
     private final SymbolTable st = new SymbolTable();
 
-    // IR
-    private final IRBuilder ir = new IRBuilder();
+    // IR (ir apunta al builder del procedimiento que se está analizando)
+    private final IRBuilder mainIR = new IRBuilder();
+    private IRBuilder ir = mainIR;
+
+    // Procedimientos: parámetros, tipos y código de cada uno
+    private static final class ProcInfo {
+        final String name;
+        final List<String> params = new ArrayList<>();   // nombres en el IR
+        final List<Type> paramTypes = new ArrayList<>();
+        final Inliner.Proc proc;
+        final boolean external;                          // está en otra unidad: aquí solo se le llama
+
+        ProcInfo(String name, IRBuilder code, boolean external) {
+            this.name = name;
+            this.proc = new Inliner.Proc(name, "P_" + name, code);
+            this.external = external;
+        }
+    }
+
+    private final Map<String, ProcInfo> procs = new LinkedHashMap<>();
+    private List<Export> procSigs;      // firmas de procs para context() (null = han cambiado)
+    private Context ctx;                // último context() (sirve mientras no cambie nada)
+    private ProcInfo currentProc;
+    private Inliner.Config inlineConfig = new Inliner.Config();
+    private String inlineReport;
+    private List<Export> imports;       // compilación separada: lo que exportan las otras unidades (null = programa suelto)
+
+    private BlockListener blockListener;
+
+    // PGO: cada if/while/for es un "sitio" con dos contadores,
+    // 2*sitio = veces que se ejecuta el then / el cuerpo y 2*sitio+1 = veces que se llega a él
+    private static final class Site {
+        final String kind;
+        final int offset;
+        String decision = "sin cambios";
+
+        Site(String kind, int offset) {
+            this.kind = kind;
+            this.offset = offset;
+        }
+    }
+
+    private final List<Site> sites = new ArrayList<>();
+    private boolean instrument;         // emitir "prof N" en cada sitio
+    private Profile profile;            // perfil de una ejecución anterior (null = sin PGO)
+    private List<Instr> cold = new ArrayList<>(); // código frío de la función actual (va tras su final)
+    private int forDepth = 0;           // dentro de un for el código se puede replicar: nada fuera de línea
+
+    // Desenrollado de bucles for con número de vueltas conocido al compilar
+    private static final int UNROLL_FULL_LIMIT = 64;      // instrucciones máx. al desenrollar del todo
+    private static final int UNROLL_FACTOR = 4;           // copias del cuerpo si se desenrolla en parte
+    private static final int UNROLL_PARTIAL_LIMIT = 256;  // tamaño máx. del cuerpo ya replicado
+    private static final int UNROLL_MAX_FACTOR = 8;       // copias máx. con perfil
+
+    // Sentencias compuestas a medio analizar (pila explícita en vez de recursión)
+    private final Deque<Frame> frames = new ArrayDeque<>();
 
-    public Parser(Lexer lexer, ErrorManager err) {
+    // Pilas de operandos/operadores de las expresiones
+    private ExprRes[] vals = new ExprRes[16];
+    private int valTop = 0;
+    private Op[] ops = new Op[16];
+    private int opTop = 0;
+
+    public Parser(TokenStream lexer, ErrorManager err) {
         this.lexer = lexer;
         this.err = err;
         this.lookahead = lexer.nextToken();
@@ -28,13 +135,245 @@ public class Parser {
     }
 
     public SymbolTable getSymbolTable() { return st; }
-    public IRBuilder getIR() { return ir; }
+    public IRBuilder getIR() { return mainIR; }
+    public void setBlockListener(BlockListener l) { this.blockListener = l; }
+    public void setInlineConfig(Inliner.Config cfg) { this.inlineConfig = cfg; }
+    public void setInstrument(boolean on) { this.instrument = on; }
+    public void setProfile(Profile p) { this.profile = p; }
+
+    /** Contadores que usa la instrumentación (2 por if/while/for). */
+    public int getCounterCount() { return 2 * sites.size(); }
+
+    /**
+     * Compila el fuente como una unidad más de un programa: los símbolos de
+     * imports (de otras unidades) se pueden usar sin declararlos, y los
+     * procedimientos propios se conservan aunque aquí no se les llame.
+     */
+    public void setImports(List<Export> imports) { this.imports = imports; }
+
+    /** Variables globales y procedimientos de este fuente (scope 0), en orden de declaración. */
+    public List<Export> getExports() {
+        List<Export> out = new ArrayList<>();
+        for (SymbolTable.Entry e : st.entries()) {
+            if (e.scopeLevel != 0) continue;
+            ProcInfo p = procs.get(e.name);
+            if (e.type != Type.PROC) {
+                out.add(Export.var(e.name, e.type));
+            } else if (p != null && !p.external) {
+                out.add(signature(p));
+            }
+        }
+        return out;
+    }
+
+    private static Export signature(ProcInfo p) {
+        List<String> params = new ArrayList<>();
+        for (String ir : p.params) params.add(ir.substring(p.name.length() + 1)); // sin "proc."
+        return Export.proc(p.name, params, p.paramTypes);
+    }
+
+    // Procedimiento conocido solo por su firma (de otra unidad o de un Context)
+    private ProcInfo external(Export e) {
+        ProcInfo p = new ProcInfo(e.name, mainIR.sharingCounters(), true);
+        for (String param : e.params) p.params.add(e.name + "." + param);
+        p.paramTypes.addAll(e.paramTypes);
+        return p;
+    }
+
+    // Copia de lo declarado ahora (las firmas se comparten mientras no se declare otro proc)
+    private Context context() {
+        if (procSigs == null) {
+            procSigs = new ArrayList<>();
+            for (ProcInfo p : procs.values()) procSigs.add(signature(p));
+        }
+        SymbolTable.Snapshot scopes = st.snapshot();
+        String proc = currentProc == null ? null : currentProc.name;
+        if (ctx == null || ctx.scopes != scopes || ctx.procs != procSigs || !Objects.equals(ctx.proc, proc)) {
+            ctx = new Context(scopes, procSigs, proc);
+        }
+        return ctx;
+    }
+
+    private void restore(Context c) {
+        st.restore(c.scopes);
+        for (Export e : c.procs) procs.put(e.name, external(e));
+        procSigs = c.procs;
+        currentProc = c.proc == null ? null : procs.get(c.proc);
+    }
+
+    /** Informe del inliner (null si el programa no tiene procedimientos). */
+    public String getInlineReport() { return inlineReport; }
 
     // --------- API ---------
     public void parseProgram() {
         match(TokenType.PROGRAM, "Se esperaba 'program'");
         parseBlock();
         match(TokenType.EOF, "Se esperaba EOF al final del programa");
+        if (!cold.isEmpty()) {
+            mainIR.emit("halt", null, null, null);
+            mainIR.append(cold);
+        }
+        for (ProcInfo p : procs.values()) {
+            if (!p.external) {
+                linkProcs();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Inlina lo que se pueda y coloca detrás de main (tras un halt) el código
+     * de los procedimientos a los que aún se llama.
+     */
+    private void linkProcs() {
+        List<Inliner.Proc> all = new ArrayList<>();
+        Set<String> vars = st.names();
+        for (ProcInfo p : procs.values()) if (!p.external) all.add(p.proc);
+        if (imports != null) {
+            for (Export e : imports) vars.add(e.name);
+        }
+        Inliner inliner = new Inliner(inlineConfig, mainIR, all, vars);
+        if (imports != null) {
+            // otras unidades pueden llamar a cualquiera de los procedimientos
+            Set<String> exported = new HashSet<>();
+            for (Inliner.Proc p : all) exported.add(p.label);
+            inliner.setExported(exported);
+        }
+        List<Inliner.Proc> kept = inliner.run();
+        inlineReport = inliner.getReport();
+
+        if (kept.isEmpty()) return;
+        if (cold.isEmpty()) mainIR.emit("halt", null, null, null);
+        for (Inliner.Proc p : kept) {
+            mainIR.emitLabel(p.label);
+            mainIR.append(p.code.getInstrs());
+        }
+    }
+
+    /**
+     * Analiza un único bloque (el token actual debe ser su '{') con lo que
+     * había declarado al empezar (ctx, de BlockListener.blockEntered). Lo usa
+     * el modo editor para re-analizar solo el bloque que contiene una edición.
+     */
+    public void parseNestedBlock(Context ctx) {
+        restore(ctx);
+        parseBlock();
+    }
+
+    /**
+     * Analiza sentencias seguidas de un bloque (la primera empieza en el
+     * token actual) con lo declarado en él (ctx, de statementBoundary), hasta
+     * que done diga que basta o lo que venga no sea una sentencia. Lo usa el
+     * modo editor para re-analizar solo las sentencias que toca una edición.
+     */
+    public void parseStatements(Context ctx, BooleanSupplier done) {
+        restore(ctx);
+        while (isStmtStart(lookahead.type) && !done.getAsBoolean()) {
+            if (blockListener != null) blockListener.statementBoundary(ctx);
+            startStmt();
+            runFrames(0);
+        }
+    }
+
+    // --------- Pila de sentencias ---------
+
+    // Qué le queda por hacer a una sentencia compuesta
+    private enum Step {
+        BLOCK_STMTS,        // bloque: sentencias hasta '}'
+        IF_THEN,            // if: falta la rama then
+        IF_AFTER_THEN,      // if: then analizada, mirar 'else'
+        IF_AFTER_ELSE,      // if: else analizada
+        WHILE_BODY,         // while: falta el cuerpo
+        WHILE_AFTER,        // while: cuerpo analizado
+        FOR_BODY,           // for: falta el cuerpo
+        FOR_AFTER           // for: cuerpo analizado, falta colocar el código
+    }
+
+    private static class Frame {
+        Step step;
+        final String l1, l2; // etiquetas de la sentencia (else/end, start/end)
+        int site = -1;       // sitio PGO
+        int at, at2;         // if: if_EQ y comienzo del else; while: etiqueta de inicio y if_EQ
+
+        Frame(Step step, String l1, String l2) {
+            this.step = step;
+            this.l1 = l1;
+            this.l2 = l2;
+        }
+    }
+
+    // El for guarda aparte el código de la condición y del paso para colocarlo tras el cuerpo
+    private static final class ForFrame extends Frame {
+        final String var;            // variable contador (o null)
+        final long trips;            // vueltas si se conocen al compilar, -1 si no
+        final List<Instr> condCode;
+        final String condPlace;
+        final List<Instr> stepCode;
+        final int bodyStart;
+
+        ForFrame(String var, long trips, List<Instr> condCode, String condPlace, List<Instr> stepCode, int bodyStart) {
+            super(Step.FOR_BODY, null, null);
+            this.var = var;
+            this.trips = trips;
+            this.condCode = condCode;
+            this.condPlace = condPlace;
+            this.stepCode = stepCode;
+            this.bodyStart = bodyStart;
+        }
+    }
+
+    /** Analiza sentencias hasta que se cierran todas las abiertas por encima de 'base'. */
+    private void runFrames(int base) {
+        while (frames.size() > base) {
+            Frame f = frames.peek();
+            switch (f.step) {
+                case BLOCK_STMTS:
+                    if (blockListener != null) blockListener.statementBoundary(context());
+                    if (isStmtStart(lookahead.type)) startStmt();
+                    else endBlock();
+                    break;
+                case IF_THEN:
+                    f.step = Step.IF_AFTER_THEN;
+                    startStmt();
+                    break;
+                case IF_AFTER_THEN:
+                    if (check(TokenType.ELSE)) {
+                        ir.emit("goto", f.l2, null, null);
+                        ir.emitLabel(f.l1);
+                        advance();
+                        f.step = Step.IF_AFTER_ELSE;
+                        f.at2 = ir.size();
+                        startStmt();
+                    } else {
+                        ir.emitLabel(f.l1);
+                        frames.pop();
+                        layoutIf(f, false);
+                    }
+                    break;
+                case IF_AFTER_ELSE:
+                    ir.emitLabel(f.l2);
+                    frames.pop();
+                    layoutIf(f, true);
+                    break;
+                case WHILE_BODY:
+                    f.step = Step.WHILE_AFTER;
+                    startStmt();
+                    break;
+                case WHILE_AFTER:
+                    frames.pop();
+                    endWhile(f);
+                    break;
+                case FOR_BODY:
+                    f.step = Step.FOR_AFTER;
+                    startStmt();
+                    break;
+                case FOR_AFTER:
+                    frames.pop();
+                    forDepth--;
+                    endFor((ForFrame) f);
+                    break;
+            }
+        }
     }
 
     // --------- Helpers ---------
@@ -54,11 +393,11 @@ public class Parser {
     }
 
     private void syntaxError(String msg) {
-        err.addLexical(lookahead.line, lookahead.column, "[SYN] " + msg);
+        err.addLexical(lookahead.offset, "[SYN] " + msg);
     }
 
     private void semanticError(String msg) {
-        err.addLexical(lookahead.line, lookahead.column, "[SEM] " + msg);
+        err.addLexical(lookahead.offset, "[SEM] " + msg);
     }
 
     private void panicRecover(TokenType expected) {
@@ -74,18 +413,41 @@ public class Parser {
 
     // --------- Grammar ---------
     private void parseBlock() {
+        int base = frames.size();
+        startBlock();
+        runFrames(base);
+    }
+
+    private void startBlock() {
+        if (blockListener != null) blockListener.blockEntered(context());
         match(TokenType.LBRACE, "Se esperaba '{'");
         st.enterScope();
+        if (st.level() == 0 && imports != null) declareImports();
 
         parseDecls();
-        parseStmts();
+        frames.push(new Frame(Step.BLOCK_STMTS, null, null));
+    }
 
+    private void endBlock() {
+        frames.pop();
         match(TokenType.RBRACE, "Se esperaba '}'");
         st.exitScope();
+        if (blockListener != null) blockListener.blockExited();
+    }
+
+    // Los símbolos de otras unidades van al scope 0, sin salir en symbols.txt
+    private void declareImports() {
+        for (Export e : imports) {
+            st.declareExternal(e.name, e.type);
+            if (e.type == Type.PROC) putProc(external(e));
+        }
     }
 
     private void parseDecls() {
-        while (isTypeToken(lookahead.type)) parseDecl();
+        while (isTypeToken(lookahead.type) || check(TokenType.PROC)) {
+            if (check(TokenType.PROC)) parseProc();
+            else parseDecl();
+        }
     }
 
     private void parseDecl() {
@@ -102,6 +464,72 @@ public class Parser {
         match(TokenType.SEMI, "Falta ';' al final de la declaración");
     }
 
+    /**
+     * proc nombre ( [tipo id {, tipo id}] ) bloque
+     * Los parámetros se pasan por valor copiándolos a sus variables antes del call.
+     */
+    private void parseProc() {
+        match(TokenType.PROC, "Se esperaba 'proc'");
+        String name = lookahead.lexeme;
+        match(TokenType.ID, "Se esperaba el nombre del procedimiento");
+
+        if (st.level() != 0) semanticError("Los procedimientos solo se pueden declarar en el bloque principal");
+        ProcInfo p = new ProcInfo(name, mainIR.sharingCounters(), false);
+        if (st.declare(name, Type.PROC)) putProc(p);
+        else semanticError("Nombre redeclarado en el mismo ámbito: " + name);
+
+        match(TokenType.LPAREN, "Se esperaba '(' tras el nombre del procedimiento");
+        st.enterScope();
+        ProcInfo savedProc = currentProc;
+        IRBuilder savedIR = ir;
+        currentProc = p;
+        ir = p.proc.code;
+
+        if (!check(TokenType.RPAREN)) {
+            while (true) {
+                Type t = parseTypeReturn();
+                String param = lookahead.lexeme;
+                match(TokenType.ID, "Se esperaba el nombre del parámetro");
+                if (t != Type.ERROR) {
+                    if (st.declare(param, t)) {
+                        p.params.add(place(param));
+                        p.paramTypes.add(t);
+                    } else {
+                        semanticError("Parámetro repetido: " + param);
+                    }
+                }
+                if (!check(TokenType.COMMA)) break;
+                advance();
+            }
+        }
+        match(TokenType.RPAREN, "Se esperaba ')' tras los parámetros");
+
+        List<Instr> savedCold = cold;
+        cold = new ArrayList<>();
+        parseBlock();
+        ir.emit("return", null, null, null);
+        ir.append(cold);
+
+        cold = savedCold;
+        ir = savedIR;
+        currentProc = savedProc;
+        st.exitScope();
+    }
+
+    private void putProc(ProcInfo p) {
+        procs.put(p.name, p);
+        procSigs = null;
+    }
+
+    /**
+     * Nombre en el IR de una variable: las de un procedimiento (parámetros y
+     * locales) llevan delante el nombre del proc para no pisar las globales.
+     */
+    private String place(String name) {
+        if (currentProc != null && st.levelOf(name) > 0) return currentProc.name + "." + name;
+        return name;
+    }
+
     private Type parseTypeReturn() {
         if (check(TokenType.INT))  { advance(); return Type.INT; }
         if (check(TokenType.BOOL)) { advance(); return Type.BOOL; }
@@ -116,21 +544,29 @@ public class Parser {
         return t == TokenType.INT || t == TokenType.BOOL || t == TokenType.CHAR;
     }
 
-    private void parseStmts() {
-        while (isStmtStart(lookahead.type)) parseStmt();
-    }
-
     private boolean isStmtStart(TokenType t) {
         return t == TokenType.ID
                 || t == TokenType.PRINT
                 || t == TokenType.IF
                 || t == TokenType.WHILE
+                || t == TokenType.FOR
                 || t == TokenType.LBRACE;
     }
 
-    private void parseStmt() {
+    /**
+     * Empieza una sentencia. Las simples se analizan enteras; las compuestas
+     * dejan un Frame en la pila y runFrames() sigue con ellas.
+     */
+    private void startStmt() {
         if (check(TokenType.ID)) {
-            parseAssign();
+            String name = lookahead.lexeme;
+            advance();
+            if (check(TokenType.LPAREN)) {
+                parseCall(name);
+                match(TokenType.SEMI, "Falta ';' al final de la llamada");
+                return;
+            }
+            parseAssignRest(name);
             match(TokenType.SEMI, "Falta ';' al final de la asignación");
             return;
         }
@@ -139,23 +575,33 @@ public class Parser {
             match(TokenType.SEMI, "Falta ';' al final de print");
             return;
         }
-        if (check(TokenType.IF)) { parseIf(); return; }
-        if (check(TokenType.WHILE)) { parseWhile(); return; }
-        if (check(TokenType.LBRACE)) { parseBlock(); return; }
+        if (check(TokenType.IF)) { startIf(); return; }
+        if (check(TokenType.WHILE)) { startWhile(); return; }
+        if (check(TokenType.FOR)) { startFor(); return; }
+        if (check(TokenType.LBRACE)) { startBlock(); return; }
 
         syntaxError("Inicio de sentencia no válido");
         advance();
     }
 
     // --------- Statements + IR ---------
-    private void parseAssign() {
+
+    // Devuelve la expresión asignada
+    private ExprRes parseAssign() {
         String name = lookahead.lexeme;
         match(TokenType.ID, "Se esperaba ID en asignación");
+        return parseAssignRest(name);
+    }
 
+    // Asignación con el ID ya consumido
+    private ExprRes parseAssignRest(String name) {
         Type varType = st.lookup(name);
         if (varType == null) {
             semanticError("Variable no declarada: " + name);
             varType = Type.ERROR;
+        } else if (varType == Type.PROC) {
+            semanticError(name + " es un procedimiento, no una variable");
+            varType = Type.ERROR;
         }
 
         match(TokenType.ASSIGN, "Se esperaba '=' en asignación");
@@ -167,7 +613,52 @@ public class Parser {
         }
 
         // IR: copy expr -> var
-        ir.emit("copy", e.r, null, name);
+        ir.emit("copy", e.r, null, place(name));
+        return e;
+    }
+
+    // Llamada nombre(args) con el ID ya consumido; IR: copias a los parámetros + call
+    private void parseCall(String name) {
+        ProcInfo p = null;
+        if (st.lookup(name) == Type.PROC) p = procs.get(name);
+        if (p == null) semanticError("Procedimiento no declarado: " + name);
+        // parámetros y locales son variables estáticas: una llamada recursiva los pisaría
+        if (p != null && currentProc != null && p.name.equals(currentProc.name)) {
+            semanticError("Llamada recursiva a " + name + ": los procedimientos no pueden ser recursivos");
+        }
+
+        match(TokenType.LPAREN, "Se esperaba '(' en la llamada");
+        List<ExprRes> args = new ArrayList<>();
+        if (!check(TokenType.RPAREN)) {
+            args.add(parseExprIR());
+            while (check(TokenType.COMMA)) {
+                advance();
+                args.add(parseExprIR());
+            }
+        }
+        match(TokenType.RPAREN, "Se esperaba ')' en la llamada");
+        if (p == null) return;
+
+        if (args.size() != p.params.size()) {
+            semanticError("Número de argumentos incorrecto en la llamada a " + name
+                    + ": se esperaban " + p.params.size() + " y hay " + args.size());
+            return;
+        }
+        String[] src = new String[args.size()];
+        for (int i = 0; i < args.size(); i++) {
+            ExprRes a = args.get(i);
+            if (a.type != Type.ERROR && a.type != p.paramTypes.get(i)) {
+                semanticError("Argumento " + (i + 1) + " de " + name + " debe ser " + p.paramTypes.get(i));
+            }
+            // si el argumento es otro parámetro del callee, se guarda antes de pisarlo
+            src[i] = a.r;
+            if (p.params.contains(a.r) && !a.r.equals(p.params.get(i))) {
+                src[i] = ir.newTemp();
+                ir.emit("copy", a.r, null, src[i]);
+            }
+        }
+        for (int i = 0; i < src.length; i++) ir.emit("copy", src[i], null, p.params.get(i));
+        ir.emit("call", p.proc.label, null, null);
     }
 
     private void parsePrint() {
@@ -180,9 +671,11 @@ public class Parser {
         ir.emit("print", e.r, null, null);
     }
 
-    private void parseIf() {
+    private void startIf() {
+        int site = newSite("if");
         match(TokenType.IF, "Se esperaba 'if'");
         match(TokenType.LPAREN, "Se esperaba '(' tras if");
+        prof(site, 1);
 
         ExprRes cond = parseExprIR();
         if (cond.type != Type.BOOL && cond.type != Type.ERROR) {
@@ -194,28 +687,27 @@ public class Parser {
         String Lelse = ir.newLabel();
         String Lend  = ir.newLabel();
 
-        // false = 0
+        // false = 0; el resto (then / else) lo hace runFrames()
+        Frame f = new Frame(Step.IF_THEN, Lelse, Lend);
+        f.site = site;
+        f.at = ir.size();
         ir.emit("if_EQ", cond.r, "0", Lelse);
-        parseStmt();
-
-        if (check(TokenType.ELSE)) {
-            ir.emit("goto", Lend, null, null);
-            ir.emitLabel(Lelse);
-            advance();
-            parseStmt();
-            ir.emitLabel(Lend);
-        } else {
-            ir.emitLabel(Lelse);
-        }
+        prof(site, 0);
+        frames.push(f);
     }
 
-    private void parseWhile() {
+    private void startWhile() {
+        int site = newSite("while");
         match(TokenType.WHILE, "Se esperaba 'while'");
         match(TokenType.LPAREN, "Se esperaba '(' tras while");
 
         String Lstart = ir.newLabel();
         String Lend   = ir.newLabel();
 
+        prof(site, 1);
+        Frame f = new Frame(Step.WHILE_BODY, Lstart, Lend);
+        f.site = site;
+        f.at = ir.size();
         ir.emitLabel(Lstart);
 
         ExprRes cond = parseExprIR();
@@ -225,192 +717,524 @@ public class Parser {
 
         match(TokenType.RPAREN, "Se esperaba ')' tras condición");
 
+        f.at2 = ir.size();
         ir.emit("if_EQ", cond.r, "0", Lend);
-        parseStmt();
-        ir.emit("goto", Lstart, null, null);
-        ir.emitLabel(Lend);
+        prof(site, 0);
+        frames.push(f);
     }
 
-    // --------- Expressions with precedence (SEM + IR) ---------
-    private ExprRes parseExprIR() { return parseOr(); }
+    private void endWhile(Frame f) {
+        long entries = count(f.site, 1), iters = count(f.site, 0);
+        if (profile == null || iters == 0 || iters < entries) {
+            ir.emit("goto", f.l1, null, null);
+            ir.emitLabel(f.l2);
+            return;
+        }
+        // bucle caliente: condición abajo, un solo salto por vuelta
+        List<Instr> code = ir.cut(f.at);
+        List<Instr> cond = code.subList(1, f.at2 - f.at);
+        String c = code.get(f.at2 - f.at).a;
+        String Lbody = ir.newLabel();
+        ir.emit("goto", f.l1, null, null);
+        ir.emitLabel(Lbody);
+        ir.append(code.subList(f.at2 - f.at + 1, code.size()));
+        ir.emitLabel(f.l1);
+        ir.append(cond);
+        ir.emit("if_NE", c, "0", Lbody);
+        sites.get(f.site).decision = String.format("rotado (%.1f vueltas por entrada)", (double) iters / entries);
+    }
 
-    private ExprRes parseOr() {
-        ExprRes left = parseAnd();
-        while (check(TokenType.OROR)) {
-            advance();
-            ExprRes right = parseAnd();
+    /**
+     * Con perfil, coloca el if para que el camino caliente no salte:
+     * la rama más ejecutada va justo detrás del if_ (invirtiéndolo si hace
+     * falta) y la otra, si se puede, fuera de línea al final de la función.
+     */
+    private void layoutIf(Frame f, boolean hasElse) {
+        if (profile == null) return;
+        long entries = count(f.site, 1), thenN = count(f.site, 0), elseN = entries - thenN;
+        Site site = sites.get(f.site);
+        if (entries == 0) {
+            site.decision = "sin ejecutar";
+            return;
+        }
+        boolean outline = forDepth == 0;
+        boolean thenHot = thenN > elseN;
+        if (thenN == elseN || (thenHot && !outline) || (!hasElse && (thenHot || !outline))) return;
+
+        List<Instr> code = ir.cut(f.at);
+        String c = code.get(0).a;
+        if (!hasElse) {
+            // then frío: if_NE al then (fuera de línea) y se sigue de largo
+            List<Instr> then = code.subList(1, code.size() - 1);
+            ir.emit("if_NE", c, "0", f.l2);
+            ir.emitLabel(f.l1);
+            cold.add(new Instr("skip", f.l2, null, null));
+            cold.addAll(then);
+            cold.add(new Instr("goto", f.l1, null, null));
+            site.decision = "then frío: fuera de línea";
+            return;
+        }
 
-            if (left.type != Type.BOOL || right.type != Type.BOOL) {
-                semanticError("'||' requiere operandos BOOL");
-                left = new ExprRes(Type.ERROR, left.r);
-            } else {
-                String t = ir.newTemp();
-                ir.emit("or", left.r, right.r, t);
-                left = new ExprRes(Type.BOOL, t);
-            }
+        List<Instr> then = code.subList(1, f.at2 - f.at - 2);
+        List<Instr> other = code.subList(f.at2 - f.at, code.size() - 1);
+        List<Instr> hot = then, rare = other;
+        if (!thenHot) {
+            hot = other;
+            rare = then;
+            ir.emit("if_NE", c, "0", f.l1);
+        } else {
+            ir.emit("if_EQ", c, "0", f.l1);
+        }
+        ir.append(hot);
+        if (outline) {
+            ir.emitLabel(f.l2);
+            cold.add(new Instr("skip", f.l1, null, null));
+            cold.addAll(rare);
+            cold.add(new Instr("goto", f.l2, null, null));
+        } else {
+            ir.emit("goto", f.l2, null, null);
+            ir.emitLabel(f.l1);
+            ir.append(rare);
+            ir.emitLabel(f.l2);
         }
-        return left;
+        site.decision = (thenHot ? "else" : "invertido (if_NE), then") + (outline ? " fuera de línea" : " detrás");
     }
 
-    private ExprRes parseAnd() {
-        ExprRes left = parseEq();
-        while (check(TokenType.ANDAND)) {
-            advance();
-            ExprRes right = parseEq();
+    // --------- PGO ---------
+
+    private int newSite(String kind) {
+        sites.add(new Site(kind, lookahead.offset));
+        return sites.size() - 1;
+    }
 
-            if (left.type != Type.BOOL || right.type != Type.BOOL) {
-                semanticError("'&&' requiere operandos BOOL");
-                left = new ExprRes(Type.ERROR, left.r);
+    // contador 0 (then/cuerpo) o 1 (entradas) del sitio
+    private void prof(int site, int which) {
+        if (instrument) ir.emit("prof", String.valueOf(2 * site + which), null, null);
+    }
+
+    // sitios sin contador en el perfil (código que se eliminó al compilar instrumentado) cuentan 0
+    private long count(int site, int which) {
+        int i = 2 * site + which;
+        return (profile == null || i >= profile.size()) ? 0 : profile.get(i);
+    }
+
+    /** Sitios del programa con lo que dice el perfil y lo que se ha hecho con cada uno. */
+    public String getPgoReport(LineIndex lines) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PGO REPORT\n");
+        sb.append("--------------------------------\n");
+        int run = 0, ifs = 0, bothWays = 0;
+        for (int i = 0; i < sites.size(); i++) {
+            Site s = sites.get(i);
+            long entries = count(i, 1), inner = count(i, 0);
+            if (entries > 0) run++;
+            String detail;
+            if (s.kind.equals("if")) {
+                ifs++;
+                if (inner > 0 && entries - inner > 0) bothWays++;
+                detail = String.format("then %d  else %d", inner, entries - inner);
             } else {
-                String t = ir.newTemp();
-                ir.emit("and", left.r, right.r, t);
-                left = new ExprRes(Type.BOOL, t);
+                detail = String.format("vueltas %d", inner);
             }
+            sb.append(String.format("línea %-5d %-6s entradas %-8d %-26s %s%n",
+                    lines.line(s.offset), s.kind, entries, detail, s.decision));
         }
-        return left;
+        sb.append("--------------------------------\n");
+        sb.append(String.format("cobertura: %d/%d sitios ejecutados (%d%%), %d/%d if con las dos ramas%n",
+                run, sites.size(), sites.isEmpty() ? 100 : 100 * run / sites.size(), bothWays, ifs));
+        return sb.toString();
     }
 
-    private ExprRes parseEq() {
-        ExprRes left = parseRel();
-        while (check(TokenType.EQEQ) || check(TokenType.NEQ)) {
-            TokenType op = lookahead.type;
-            advance();
-            ExprRes right = parseRel();
+    /**
+     * for (init; cond; paso) sentencia
+     * init y paso son asignaciones opcionales. La condición y el paso se
+     * generan aparte y se colocan tras el cuerpo (ver endFor).
+     */
+    private void startFor() {
+        int site = newSite("for");
+        match(TokenType.FOR, "Se esperaba 'for'");
+        match(TokenType.LPAREN, "Se esperaba '(' tras for");
+
+        String initVar = null;
+        ExprRes init = null;
+        if (check(TokenType.ID)) {
+            initVar = lookahead.lexeme;
+            init = parseAssign();
+        }
+        match(TokenType.SEMI, "Falta ';' tras la inicialización del for");
+        prof(site, 1);
 
-            if (left.type == Type.ERROR || right.type == Type.ERROR) {
-                left = new ExprRes(Type.ERROR, left.r);
-                continue;
-            }
-            if (left.type != right.type) {
-                semanticError("'=='/'!=' requiere operandos del mismo tipo");
-                left = new ExprRes(Type.ERROR, left.r);
-                continue;
-            }
+        int mark = ir.size();
+        ExprRes cond = parseExprIR();
+        if (cond.type != Type.BOOL && cond.type != Type.ERROR) {
+            semanticError("La condición del for debe ser BOOL");
+        }
+        match(TokenType.SEMI, "Falta ';' tras la condición del for");
+        List<Instr> condCode = ir.cut(mark);
 
-            // IR boolean resultado 0 / -1
-            String t = ir.newTemp();
-            String e1 = ir.newLabel();
-            String e2 = ir.newLabel();
+        String stepVar = null;
+        ExprRes step = null;
+        if (check(TokenType.ID)) {
+            stepVar = lookahead.lexeme;
+            step = parseAssign();
+        }
+        match(TokenType.RPAREN, "Se esperaba ')' tras for");
+        List<Instr> stepCode = ir.cut(mark);
+
+        long trips = tripCount(initVar, init, cond, stepVar, step);
+        ForFrame f = new ForFrame(initVar == null ? null : place(initVar), trips, condCode, cond.r, stepCode, ir.size());
+        f.site = site;
+        prof(site, 0);
+        frames.push(f);
+        forDepth++;
+    }
 
-            ir.emit(op == TokenType.EQEQ ? "if_EQ" : "if_NE", left.r, right.r, e1);
-            ir.emit("copy", "0", null, t);
-            ir.emit("goto", e2, null, null);
-            ir.emitLabel(e1);
-            ir.emit("copy", "-1", null, t);
-            ir.emitLabel(e2);
+    /**
+     * Vueltas de un for "contado": v = c0; v OP c1; v = v +/- c2 (todo constante).
+     * -1 si no tiene esa forma o no termina, o si el valor con el que sale
+     * (c0 + vueltas * paso) no cabe en un int: al ejecutarlo v daría la vuelta
+     * y la condición se seguiría cumpliendo.
+     */
+    private long tripCount(String v, ExprRes init, ExprRes cond, String stepVar, ExprRes step) {
+        if (v == null || init.cval == null || st.lookup(v) != Type.INT) return -1;
+        String pv = place(v);
+        if (cond.type != Type.BOOL || cond.op == null || !isVarRef(cond.left, pv) || cond.right.cval == null) return -1;
+        if (!v.equals(stepVar) || step.type != Type.INT || !isVarRef(step.left, pv) || step.right.cval == null) return -1;
+        if (!"add".equals(step.op) && !"sub".equals(step.op)) return -1;
+
+        long from = init.cval;
+        long to = cond.right.cval;
+        long by = "add".equals(step.op) ? step.right.cval : -(long) step.right.cval;
+        if (by == 0) return -1;
+
+        long n;
+        switch (cond.op) {
+            case "if_LT": n = (by > 0) ? (from < to ? (to - from + by - 1) / by : 0) : (from < to ? -1 : 0); break;
+            case "if_LE": n = (by > 0) ? (from <= to ? (to - from) / by + 1 : 0) : (from <= to ? -1 : 0); break;
+            case "if_GT": n = (by < 0) ? (from > to ? (from - to - by - 1) / -by : 0) : (from > to ? -1 : 0); break;
+            case "if_GE": n = (by < 0) ? (from >= to ? (from - to) / -by + 1 : 0) : (from >= to ? -1 : 0); break;
+            case "if_NE": n = ((to - from) % by == 0 && (to - from) / by >= 0) ? (to - from) / by : -1; break;
+            default: return -1;
+        }
+        if (n < 0 || n > Integer.MAX_VALUE) return -1;
+        long last = from + n * by;
+        return (last > Integer.MAX_VALUE || last < Integer.MIN_VALUE) ? -1 : n;
+    }
+
+    // e es directamente la variable v (sin operar)
+    private boolean isVarRef(ExprRes e, String v) {
+        return e != null && e.op == null && e.cval == null && v.equals(e.r);
+    }
 
-            left = new ExprRes(Type.BOOL, t);
+    // ¿Alguna instrucción escribe en la variable? (un call puede escribir en cualquiera)
+    private boolean writes(List<Instr> code, String v) {
+        for (Instr in : code) {
+            if (in.op.equals("call")) return true;
+            if (v.equals(in.c) && !in.op.startsWith("if_")) return true;
         }
-        return left;
+        return false;
     }
 
-    private ExprRes parseRel() {
-        ExprRes left = parseAdd();
-        while (check(TokenType.LT) || check(TokenType.LE) || check(TokenType.GT) || check(TokenType.GE)) {
-            TokenType op = lookahead.type;
-            advance();
-            ExprRes right = parseAdd();
+    /**
+     * Coloca el código del for:
+     *  - vueltas conocidas y cuerpo pequeño: se desenrolla entero (sin saltos);
+     *  - vueltas conocidas: se repite el cuerpo UNROLL_FACTOR veces en un bucle
+     *    con contador, y las vueltas sobrantes van desenrolladas detrás;
+     *  - si no: bucle con la condición abajo (un salto por vuelta en vez de dos).
+     * Con perfil el número de copias sale de las vueltas medias observadas
+     * (ver unrollFactor), y los bucles calientes sin vueltas conocidas también
+     * se desenrollan, mirando la condición detrás de cada copia.
+     */
+    private void endFor(ForFrame f) {
+        List<Instr> body = ir.cut(f.bodyStart);
+        long n = (f.trips >= 0 && !writes(body, f.var)) ? f.trips : -1;
+        int iterSize = body.size() + f.stepCode.size();
+        Site site = sites.get(f.site);
+
+        if (n >= 0 && n * iterSize <= UNROLL_FULL_LIMIT) {
+            emitIterations(body, f.stepCode, n);
+            site.decision = "desenrollado entero";
+            return;
+        }
 
-            if (left.type != Type.INT || right.type != Type.INT) {
-                semanticError("Comparaciones (<,<=,>,>=) requieren INT");
-                left = new ExprRes(Type.ERROR, left.r);
-                continue;
-            }
+        int factor = unrollFactor(f, n, iterSize);
+        if (factor > 1 && n >= factor) {
+            String count = ir.newTemp();
+            String Ltop = ir.newLabel();
+            ir.emit("copy", String.valueOf(n / factor), null, count);
+            ir.emitLabel(Ltop);
+            emitIterations(body, f.stepCode, factor);
+            ir.emit("sub", count, "1", count);
+            ir.emit("if_GT", count, "0", Ltop);
+            emitIterations(body, f.stepCode, n % factor);
+            site.decision = "desenrollado x" + factor;
+            return;
+        }
 
-            String t = ir.newTemp();
-            String e1 = ir.newLabel();
-            String e2 = ir.newLabel();
+        String Lbody = ir.newLabel();
+        String Ltest = ir.newLabel();
+        String Lend = null;
+        ir.emit("goto", Ltest, null, null);
+        ir.emitLabel(Lbody);
+        if (factor > 1 && n < 0) {
+            // copias con su propia salida; la última vuelve arriba con la condición de siempre
+            Lend = ir.newLabel();
+            for (int k = 1; k < factor; k++) {
+                ir.appendCopy(body);
+                ir.appendCopy(f.stepCode);
+                ir.appendCopy(f.condCode);
+                ir.emit("if_EQ", f.condPlace, "0", Lend);
+            }
+            site.decision = "desenrollado x" + factor + " con salida en cada copia";
+        } else if (profile != null) {
+            site.decision = "sin desenrollar";
+        }
+        ir.append(body);
+        ir.append(f.stepCode);
+        ir.emitLabel(Ltest);
+        ir.append(f.condCode);
+        ir.emit("if_NE", f.condPlace, "0", Lbody);
+        if (Lend != null) ir.emitLabel(Lend);
+    }
 
-            ir.emit("if_" + relMnemonic(op), left.r, right.r, e1);
-            ir.emit("copy", "0", null, t);
-            ir.emit("goto", e2, null, null);
-            ir.emitLabel(e1);
-            ir.emit("copy", "-1", null, t);
-            ir.emitLabel(e2);
+    /**
+     * Copias del cuerpo por vuelta del bucle desenrollado (1 = no desenrollar).
+     * Sin perfil: UNROLL_FACTOR si se conocen las vueltas. Con perfil: la
+     * mayor potencia de 2 hasta UNROLL_MAX_FACTOR que no pase de las vueltas
+     * medias por entrada; los bucles fríos o de menos de 2 vueltas no se tocan.
+     */
+    private int unrollFactor(ForFrame f, long n, int iterSize) {
+        if (profile == null) {
+            return (n >= 0 && iterSize * UNROLL_FACTOR <= UNROLL_PARTIAL_LIMIT) ? UNROLL_FACTOR : 1;
+        }
+        long entries = count(f.site, 1), iters = count(f.site, 0);
+        if (entries == 0 || iters < 2 * entries) return 1;
+        long avg = iters / entries;
+        for (int k = UNROLL_MAX_FACTOR; k >= 2; k /= 2) {
+            if (k <= avg && k * iterSize <= UNROLL_PARTIAL_LIMIT) return k;
+        }
+        return 1;
+    }
 
-            left = new ExprRes(Type.BOOL, t);
+    // n copias seguidas de cuerpo + paso (cada copia con sus propias etiquetas)
+    private void emitIterations(List<Instr> body, List<Instr> stepCode, long n) {
+        for (long k = 0; k < n; k++) {
+            ir.appendCopy(body);
+            ir.appendCopy(stepCode);
         }
-        return left;
     }
 
-    private String relMnemonic(TokenType t) {
+    // --------- Expressions with precedence (SEM + IR) ---------
+
+    // Operadores en la pila; prec = 0 para prefijos y '('
+    private enum Op {
+        OR(1), AND(2), EQ(3), NE(3), LT(4), LE(4), GT(4), GE(4),
+        ADD(5), SUB(5), MUL(6), DIV(6), MOD(6),
+        NOT(0), NEG(0), PAREN(0);
+
+        final int prec;
+
+        Op(int prec) { this.prec = prec; }
+
+        boolean isBinary() { return prec > 0; }
+    }
+
+    private static Op binaryOp(TokenType t) {
         switch (t) {
-            case LT: return "LT";
-            case LE: return "LE";
-            case GT: return "GT";
-            case GE: return "GE";
-            default: return "??";
+            case OROR:   return Op.OR;
+            case ANDAND: return Op.AND;
+            case EQEQ:   return Op.EQ;
+            case NEQ:    return Op.NE;
+            case LT:     return Op.LT;
+            case LE:     return Op.LE;
+            case GT:     return Op.GT;
+            case GE:     return Op.GE;
+            case PLUS:   return Op.ADD;
+            case MINUS:  return Op.SUB;
+            case STAR:   return Op.MUL;
+            case SLASH:  return Op.DIV;
+            case MOD:    return Op.MOD;
+            default:     return null;
         }
     }
 
-    private ExprRes parseAdd() {
-        ExprRes left = parseMul();
-        while (check(TokenType.PLUS) || check(TokenType.MINUS)) {
-            TokenType op = lookahead.type;
-            advance();
-            ExprRes right = parseMul();
-
-            if (left.type != Type.INT || right.type != Type.INT) {
-                semanticError("'+/-' requiere INT");
-                left = new ExprRes(Type.ERROR, left.r);
-                continue;
+    /**
+     * Precedencia por escalada con pilas explícitas de operandos y operadores
+     * (sin recursión, así que el anidamiento solo está limitado por memoria).
+     * Cada operador se reduce con el mismo lookahead con el que lo reducía el
+     * descenso recursivo, así que errores e IR salen en el mismo orden.
+     */
+    private ExprRes parseExprIR() {
+        int opBase = opTop;
+        while (true) {
+            // esperando operando: prefijos y paréntesis
+            if (check(TokenType.NOT))    { advance(); pushOp(Op.NOT);   continue; }
+            if (check(TokenType.MINUS))  { advance(); pushOp(Op.NEG);   continue; }
+            if (check(TokenType.LPAREN)) { advance(); pushOp(Op.PAREN); continue; }
+            pushVal(parsePrimary());
+
+            // tras operando
+            while (true) {
+                while (opTop > opBase && !ops[opTop - 1].isBinary() && ops[opTop - 1] != Op.PAREN) reduce();
+
+                Op op = binaryOp(lookahead.type);
+                if (op != null) {
+                    // asociatividad por la izquierda: se reducen los de igual o mayor precedencia
+                    while (opTop > opBase && ops[opTop - 1].prec >= op.prec) reduce();
+                    advance();
+                    pushOp(op);
+                    break;
+                }
+
+                // fin de la (sub)expresión actual
+                while (opTop > opBase && ops[opTop - 1].isBinary()) reduce();
+                if (opTop > opBase) { // ops[opTop - 1] == PAREN
+                    opTop--;
+                    match(TokenType.RPAREN, "Se esperaba ')'");
+                    continue;
+                }
+                return vals[--valTop];
             }
+        }
+    }
 
-            String t = ir.newTemp();
-            ir.emit(op == TokenType.PLUS ? "add" : "sub", left.r, right.r, t);
-            left = new ExprRes(Type.INT, t);
+    private void pushOp(Op op) {
+        if (opTop == ops.length) ops = Arrays.copyOf(ops, opTop * 2);
+        ops[opTop++] = op;
+    }
+
+    private void pushVal(ExprRes e) {
+        if (valTop == vals.length) vals = Arrays.copyOf(vals, valTop * 2);
+        vals[valTop++] = e;
+    }
+
+    // Aplica el operador de la cima a sus operandos (comprobación de tipos + IR)
+    private void reduce() {
+        Op op = ops[--opTop];
+        if (!op.isBinary()) {
+            ExprRes e = vals[--valTop];
+            pushVal(op == Op.NOT ? reduceNot(e) : reduceNeg(e));
+            return;
+        }
+        ExprRes right = vals[--valTop];
+        ExprRes left = vals[--valTop];
+        switch (op) {
+            case OR:  pushVal(reduceLogic(left, right, "or", "'||' requiere operandos BOOL")); break;
+            case AND: pushVal(reduceLogic(left, right, "and", "'&&' requiere operandos BOOL")); break;
+            case EQ:
+            case NE:  pushVal(reduceEq(op, left, right)); break;
+            case LT:
+            case LE:
+            case GT:
+            case GE:  pushVal(reduceRel(op, left, right)); break;
+            case ADD:
+            case SUB: pushVal(reduceArith(op == Op.ADD ? "add" : "sub", left, right, "'+/-' requiere INT")); break;
+            default:  pushVal(reduceArith(op == Op.MUL ? "prod" : (op == Op.DIV ? "div" : "mod"), left, right, "'*//%' requiere INT")); break;
         }
-        return left;
     }
 
-    private ExprRes parseMul() {
-        ExprRes left = parseUnary();
-        while (check(TokenType.STAR) || check(TokenType.SLASH) || check(TokenType.MOD)) {
-            TokenType op = lookahead.type;
-            advance();
-            ExprRes right = parseUnary();
+    private ExprRes reduceLogic(ExprRes left, ExprRes right, String irOp, String msg) {
+        if (left.type != Type.BOOL || right.type != Type.BOOL) {
+            semanticError(msg);
+            return new ExprRes(Type.ERROR, left.r);
+        }
+        String t = ir.newTemp();
+        ir.emit(irOp, left.r, right.r, t);
+        return new ExprRes(Type.BOOL, t);
+    }
 
-            if (left.type != Type.INT || right.type != Type.INT) {
-                semanticError("'*//%' requiere INT");
-                left = new ExprRes(Type.ERROR, left.r);
-                continue;
-            }
+    private ExprRes reduceEq(Op op, ExprRes left, ExprRes right) {
+        if (left.type == Type.ERROR || right.type == Type.ERROR) {
+            return new ExprRes(Type.ERROR, left.r);
+        }
+        if (left.type != right.type) {
+            semanticError("'=='/'!=' requiere operandos del mismo tipo");
+            return new ExprRes(Type.ERROR, left.r);
+        }
 
-            String t = ir.newTemp();
-            String irOp = (op == TokenType.STAR) ? "prod" : (op == TokenType.SLASH ? "div" : "mod");
-            ir.emit(irOp, left.r, right.r, t);
-            left = new ExprRes(Type.INT, t);
+        // IR boolean resultado 0 / -1
+        return emitCompare(op == Op.EQ ? "if_EQ" : "if_NE", left, right);
+    }
+
+    private ExprRes reduceRel(Op op, ExprRes left, ExprRes right) {
+        if (left.type != Type.INT || right.type != Type.INT) {
+            semanticError("Comparaciones (<,<=,>,>=) requieren INT");
+            return new ExprRes(Type.ERROR, left.r);
         }
-        return left;
+        return emitCompare("if_" + relMnemonic(op), left, right);
     }
 
-    private ExprRes parseUnary() {
-        if (check(TokenType.NOT)) {
-            advance();
-            ExprRes e = parseUnary();
-            if (e.type != Type.BOOL && e.type != Type.ERROR) semanticError("'!' requiere BOOL");
-            String t = ir.newTemp();
-            ir.emit("not", e.r, null, t);
-            return new ExprRes(e.type == Type.ERROR ? Type.ERROR : Type.BOOL, t);
+    private ExprRes emitCompare(String ifOp, ExprRes left, ExprRes right) {
+        String t = ir.newTemp();
+        String e1 = ir.newLabel();
+        String e2 = ir.newLabel();
+
+        ir.emit(ifOp, left.r, right.r, e1);
+        ir.emit("copy", "0", null, t);
+        ir.emit("goto", e2, null, null);
+        ir.emitLabel(e1);
+        ir.emit("copy", "-1", null, t);
+        ir.emitLabel(e2);
+
+        return new ExprRes(Type.BOOL, t, null, ifOp, left, right);
+    }
+
+    private String relMnemonic(Op op) {
+        switch (op) {
+            case LT: return "LT";
+            case LE: return "LE";
+            case GT: return "GT";
+            case GE: return "GE";
+            default: return "??";
         }
-        if (check(TokenType.MINUS)) {
-            advance();
-            ExprRes e = parseUnary();
-            if (e.type != Type.INT && e.type != Type.ERROR) semanticError("'-' unario requiere INT");
-            String t = ir.newTemp();
-            ir.emit("neg", e.r, null, t);
-            return new ExprRes(e.type == Type.ERROR ? Type.ERROR : Type.INT, t);
+    }
+
+    private ExprRes reduceArith(String irOp, ExprRes left, ExprRes right, String msg) {
+        if (left.type != Type.INT || right.type != Type.INT) {
+            semanticError(msg);
+            return new ExprRes(Type.ERROR, left.r);
+        }
+        String t = ir.newTemp();
+        ir.emit(irOp, left.r, right.r, t);
+        return new ExprRes(Type.INT, t, fold(irOp, left.cval, right.cval), irOp, left, right);
+    }
+
+    // Valor constante de una operación aritmética (null si no se conoce)
+    private static Integer fold(String irOp, Integer a, Integer b) {
+        if (a == null || b == null) return null;
+        switch (irOp) {
+            case "add":  return a + b;
+            case "sub":  return a - b;
+            case "prod": return a * b;
+            case "div":  return b == 0 ? null : a / b;
+            default:     return b == 0 ? null : a % b;
         }
-        return parsePrimary();
     }
 
+    private ExprRes reduceNot(ExprRes e) {
+        if (e.type != Type.BOOL && e.type != Type.ERROR) semanticError("'!' requiere BOOL");
+        String t = ir.newTemp();
+        ir.emit("not", e.r, null, t);
+        return new ExprRes(e.type == Type.ERROR ? Type.ERROR : Type.BOOL, t);
+    }
+
+    private ExprRes reduceNeg(ExprRes e) {
+        if (e.type != Type.INT && e.type != Type.ERROR) semanticError("'-' unario requiere INT");
+        String t = ir.newTemp();
+        ir.emit("neg", e.r, null, t);
+        Integer val = (e.cval != null) ? -e.cval : null;
+        return new ExprRes(e.type == Type.ERROR ? Type.ERROR : Type.INT, t, val);
+    }
+
+    // Operandos simples; los prefijos y '(' los trata parseExprIR
     private ExprRes parsePrimary() {
         if (check(TokenType.NUM)) {
             String v = lookahead.lexeme;
+            Integer val = (Integer) lookahead.value;
             advance();
             String t = ir.newTemp();
             ir.emit("copy", v, null, t);
-            return new ExprRes(Type.INT, t);
+            return new ExprRes(Type.INT, t, val);
         }
 
         if (check(TokenType.CHAR_LIT)) {
@@ -439,15 +1263,12 @@ public class Parser {
                 semanticError("Variable no declarada: " + name);
                 return new ExprRes(Type.ERROR, name);
             }
+            if (t == Type.PROC) {
+                semanticError(name + " es un procedimiento, no una variable");
+                return new ExprRes(Type.ERROR, name);
+            }
             // Para IDs devolvemos el nombre como “lugar”
-            return new ExprRes(t, name);
-        }
-
-        if (check(TokenType.LPAREN)) {
-            advance();
-            ExprRes e = parseExprIR();
-            match(TokenType.RPAREN, "Se esperaba ')'");
-            return e;
+            return new ExprRes(t, place(name));
         }
 
         syntaxError("Expresión inválida");
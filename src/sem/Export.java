@@ -0,0 +1,65 @@
+package sem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Símbolo que una unidad de compilación deja ver a las demás: una variable
+ * global o un procedimiento (con nombres y tipos de sus parámetros, que
+ * hacen falta para generar la llamada desde otra unidad).
+ *
+ * En texto: "INT x" o "PROC f(INT a, BOOL b)".
+ */
+public final class Export {
+    public final String name;
+    public final Type type;
+    public final List<String> params;     // solo PROC
+    public final List<Type> paramTypes;
+
+    private Export(String name, Type type, List<String> params, List<Type> paramTypes) {
+        this.name = name;
+        this.type = type;
+        this.params = Collections.unmodifiableList(params);
+        this.paramTypes = Collections.unmodifiableList(paramTypes);
+    }
+
+    public static Export var(String name, Type type) {
+        return new Export(name, type, new ArrayList<>(), new ArrayList<>());
+    }
+
+    public static Export proc(String name, List<String> params, List<Type> paramTypes) {
+        return new Export(name, Type.PROC, new ArrayList<>(params), new ArrayList<>(paramTypes));
+    }
+
+    /** Lee el formato de toString(). */
+    public static Export parse(String s) {
+        if (!s.startsWith("PROC ")) {
+            int sp = s.indexOf(' ');
+            return var(s.substring(sp + 1), Type.valueOf(s.substring(0, sp)));
+        }
+        int lp = s.indexOf('(');
+        List<String> params = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        String inside = s.substring(lp + 1, s.length() - 1);
+        if (!inside.isEmpty()) {
+            for (String p : inside.split(", ")) {
+                int sp = p.indexOf(' ');
+                types.add(Type.valueOf(p.substring(0, sp)));
+                params.add(p.substring(sp + 1));
+            }
+        }
+        return proc(s.substring(5, lp), params, types);
+    }
+
+    @Override
+    public String toString() {
+        if (type != Type.PROC) return type.name() + " " + name;
+        StringBuilder sb = new StringBuilder("PROC ").append(name).append('(');
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(paramTypes.get(i).name()).append(' ').append(params.get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -1,5 +1,8 @@
 package sem;
 
+import util.OutputWriter;
+
+import java.io.IOException;
 import java.util.*;
 
 public class SymbolTable {
@@ -19,11 +22,30 @@ public class SymbolTable {
         public String toString() {
             return String.format("SCOPE %d  %-12s : %s", scopeLevel, name, type);
         }
+
+        public void writeTo(OutputWriter out) throws IOException {
+            out.write("SCOPE ").writeInt(scopeLevel).spaces(2).pad(name, 12).write(" : ").write(type.name());
+        }
+    }
+
+    /**
+     * Scopes abiertos en un momento dado (ver snapshot()): una copia del más
+     * interno y la de los de fuera, que se comparte con otras.
+     */
+    public static final class Snapshot {
+        private final Map<String, Type> scope;
+        private final Snapshot outer;
+
+        private Snapshot(Map<String, Type> scope, Snapshot outer) {
+            this.scope = scope;
+            this.outer = outer;
+        }
     }
 
     private final Deque<Map<String, Type>> scopes = new ArrayDeque<>();
     private final List<Entry> history = new ArrayList<>();   // <- lo entregable
     private int level = -1;
+    private final List<Snapshot> snaps = new ArrayList<>();  // snaps.get(k): scopes 0..k tal y como están
 
     public SymbolTable() {
     }
@@ -31,13 +53,49 @@ public class SymbolTable {
     public void enterScope() {
         scopes.push(new LinkedHashMap<>()); // LinkedHashMap para orden estable
         level++;
+        changed(level);
     }
 
     public void exitScope() {
         if (!scopes.isEmpty()) {
             scopes.pop();
             level--;
+            changed(level + 1);
+        }
+    }
+
+    /**
+     * Copia de los scopes abiertos ahora mismo (null si no hay ninguno).
+     * Es copia porque un scope puede seguir recibiendo declaraciones después
+     * (p.ej. el global tras el cuerpo de un proc); cada scope se copia una
+     * vez y la copia sirve mientras no cambie.
+     */
+    public Snapshot snapshot() {
+        Iterator<Map<String, Type>> it = scopes.descendingIterator(); // del más externo al más interno
+        for (int k = 0; k <= level; k++) {
+            Map<String, Type> s = it.next();
+            if (k < snaps.size()) continue;
+            snaps.add(new Snapshot(new LinkedHashMap<>(s), k == 0 ? null : snaps.get(k - 1)));
+        }
+        return level < 0 ? null : snaps.get(level);
+    }
+
+    public int level() { return level; }
+
+    /** Reabre unos scopes guardados con snapshot() (para re-analizar un trozo suelto). */
+    public void restore(Snapshot saved) {
+        scopes.clear();
+        snaps.clear();
+        for (Snapshot s = saved; s != null; s = s.outer) {
+            scopes.addLast(new LinkedHashMap<>(s.scope));
+            snaps.add(0, s);
         }
+        level = snaps.size() - 1;
+    }
+
+    // Las copias de los scopes k en adelante ya no valen
+    private void changed(int k) {
+        while (snaps.size() > k) snaps.remove(snaps.size() - 1);
     }
 
     // false si ya existe en el MISMO scope
@@ -45,12 +103,22 @@ public class SymbolTable {
         Map<String, Type> top = scopes.peek();
         if (top.containsKey(name)) return false;
         top.put(name, type);
+        changed(level);
 
         // Guardamos para el symbols.txt final
         history.add(new Entry(level, name, type));
         return true;
     }
 
+    /**
+     * Declara un nombre de otra unidad de compilación: se puede usar como
+     * cualquier otro, pero no sale en symbols.txt (ya sale en la suya).
+     */
+    public void declareExternal(String name, Type type) {
+        scopes.peek().put(name, type);
+        changed(level);
+    }
+
     // busca en scopes (del más interno al más externo)
     public Type lookup(String name) {
         for (Map<String, Type> s : scopes) {
@@ -60,6 +128,28 @@ public class SymbolTable {
         return null;
     }
 
+    // nivel del scope donde está declarado name (-1 si no está)
+    public int levelOf(String name) {
+        int l = level;
+        for (Map<String, Type> s : scopes) {
+            if (s.containsKey(name)) return l;
+            l--;
+        }
+        return -1;
+    }
+
+    /** Todos los nombres declarados alguna vez (cualquier scope). */
+    public Set<String> names() {
+        Set<String> out = new HashSet<>();
+        for (Entry e : history) out.add(e.name);
+        return out;
+    }
+
+    /** Declaraciones en orden de inserción (lo que va a symbols.txt). */
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(history);
+    }
+
     /** Texto completo para out/symbols.txt */
     public String dump() {
         StringBuilder sb = new StringBuilder();
@@ -68,4 +158,19 @@ public class SymbolTable {
         for (Entry e : history) sb.append(e).append('\n');
         return sb.toString();
     }
+
+    /** Lo mismo que dump(), escrito directamente en out. */
+    public void writeTo(OutputWriter out) throws IOException {
+        writeTo(out, history);
+    }
+
+    /** symbols.txt con unas entradas cualesquiera (p.ej. las de varias unidades enlazadas). */
+    public static void writeTo(OutputWriter out, List<Entry> entries) throws IOException {
+        out.write("SYMBOL TABLE (insertions order)\n");
+        out.write("--------------------------------\n");
+        for (Entry e : entries) {
+            e.writeTo(out);
+            out.write('\n');
+        }
+    }
 }
@@ -1,5 +1,5 @@
 package sem;
 
 public enum Type {
-    INT, BOOL, CHAR, ERROR
+    INT, BOOL, CHAR, PROC, ERROR
 }
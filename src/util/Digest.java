@@ -0,0 +1,59 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Huella de un contenido: su longitud y su SHA-256. Con un CRC32 dos
+ * contenidos distintos pueden dar lo mismo y se daría por "sin cambios" un
+ * fichero que sí ha cambiado; con esto no pasa en la práctica.
+ */
+public final class Digest {
+
+    private final long length;
+    private final byte[] sha256;
+
+    Digest(long length, byte[] sha256) {
+        this.length = length;
+        this.sha256 = sha256;
+    }
+
+    public static Digest of(Path file) throws IOException {
+        MessageDigest md = sha256();
+        byte[] chunk = new byte[64 * 1024];
+        long length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                md.update(chunk, 0, n);
+                length += n;
+            }
+        }
+        return new Digest(length, md.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // todas las JVM tienen SHA-256
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Digest)) return false;
+        Digest d = (Digest) o;
+        return length == d.length && Arrays.equals(sha256, d.sha256);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(sha256);
+    }
+}
@@ -0,0 +1,57 @@
+package util;
+
+/**
+ * Tabla de inicios de línea de un texto para pasar de offset a línea/columna.
+ *
+ * Se construye la primera vez que se pregunta una posición (si nadie imprime
+ * tokens ni errores, no se construye nunca). Los saltos de línea se buscan
+ * con String.indexOf, que la JVM resuelve con instrucciones vectoriales.
+ */
+public class LineIndex {
+    private final String text;
+    private int[] starts; // offset donde empieza cada línea (starts[0] = 0)
+    private int last;     // última línea encontrada (0-based): las consultas suelen ir en orden
+
+    public LineIndex(String text) {
+        this.text = text;
+    }
+
+    private int[] starts() {
+        if (starts == null) {
+            int count = 1;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) count++;
+            int[] s = new int[count];
+            int k = 1;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) s[k++] = i + 1;
+            starts = s;
+        }
+        return starts;
+    }
+
+    public int lineCount() { return starts().length; }
+
+    /** Offset donde empieza la línea (0-based). */
+    public int lineStart(int line) { return starts()[line]; }
+
+    /** Línea (1-based) del offset: búsqueda binaria en la tabla (o la línea de la consulta anterior o la siguiente). */
+    public int line(int offset) {
+        int[] s = starts();
+        if (s[last] <= offset && (last + 1 == s.length || offset < s[last + 1])) return last + 1;
+        if (last + 1 < s.length && s[last + 1] <= offset && (last + 2 == s.length || offset < s[last + 2])) {
+            return ++last + 1;
+        }
+        int lo = 0, hi = s.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (s[mid] <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        last = lo;
+        return lo + 1;
+    }
+
+    /** Columna (1-based) del offset. */
+    public int col(int offset) {
+        return offset - starts()[line(offset) - 1] + 1;
+    }
+}
@@ -0,0 +1,106 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Directorio de salida (out/).
+ *
+ * Con onlyChanged cada fichero se escribe primero en un temporal y solo
+ * sustituye al de verdad (rename atómico) si su huella (longitud y SHA-256,
+ * ver Digest) es distinta: quien esté mirando out/ nunca ve un fichero a
+ * medias, y los que no cambian conservan su fecha. Las huellas de lo ya
+ * escrito se recuerdan entre compilaciones (modo --watch); la primera vez
+ * se calculan del disco.
+ * Sin onlyChanged se escribe directamente, como siempre.
+ */
+public class OutputDir {
+
+    /** Contenido de texto, escrito con un OutputWriter. */
+    public interface Content {
+        void writeTo(OutputWriter w) throws IOException;
+    }
+
+    /** Contenido que escribe su propio fichero (p.ej. un .irb). */
+    public interface FileContent {
+        void writeTo(Path file) throws IOException;
+    }
+
+    private final Path dir;
+    private final boolean onlyChanged;
+    private final OutputWriter out = new OutputWriter();
+    private final Map<String, Digest> digests = new HashMap<>();
+    private int written, unchanged;
+
+    public OutputDir(Path dir, boolean onlyChanged) throws IOException {
+        this.dir = dir;
+        this.onlyChanged = onlyChanged;
+        Files.createDirectories(dir);
+    }
+
+    public Path path() { return dir; }
+    public Path resolve(String name) { return dir.resolve(name); }
+
+    public void write(String name, Content c) throws IOException {
+        Path target = dir.resolve(name);
+        Path file = onlyChanged ? tmp(name) : target;
+        try (OutputWriter w = out.open(file, onlyChanged)) {
+            c.writeTo(w);
+        }
+        commit(name, file, onlyChanged ? out.digest() : null);
+    }
+
+    /** Texto en UTF-8. */
+    public void write(String name, String text) throws IOException {
+        write(name, w -> w.write(text));
+    }
+
+    public void writeFile(String name, FileContent c) throws IOException {
+        Path file = onlyChanged ? tmp(name) : dir.resolve(name);
+        c.writeTo(file);
+        commit(name, file, onlyChanged ? Digest.of(file) : null);
+    }
+
+    public void delete(String name) throws IOException {
+        digests.remove(name);
+        Files.deleteIfExists(dir.resolve(name));
+    }
+
+    /** Ficheros reescritos / que no cambiaban desde la última llamada (y pone a cero). */
+    public int[] takeCounts() {
+        int[] c = { written, unchanged };
+        written = unchanged = 0;
+        return c;
+    }
+
+    private Path tmp(String name) {
+        return dir.resolve("." + name + ".tmp");
+    }
+
+    private void commit(String name, Path file, Digest digest) throws IOException {
+        if (!onlyChanged) {
+            written++;
+            return;
+        }
+        Path target = dir.resolve(name);
+        Digest old = digests.get(name);
+        if (old == null && Files.isRegularFile(target)) old = Digest.of(target);
+        if (digest.equals(old) && Files.isRegularFile(target)) {
+            Files.delete(file);
+            unchanged++;
+            return;
+        }
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        digests.put(name, digest);
+        written++;
+    }
+}
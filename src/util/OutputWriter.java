@@ -0,0 +1,154 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Escritura de los ficheros de salida sin pasar por String.format ni por
+ * cadenas intermedias: el texto se codifica en UTF-8 directamente sobre un
+ * ByteBuffer directo que se vuelca al FileChannel cuando se llena.
+ *
+ * El buffer se reutiliza entre ficheros: open() / close() por fichero.
+ * Si se pide, lleva la huella (Digest) de lo escrito (ver OutputDir).
+ */
+public class OutputWriter implements Closeable {
+    private final ByteBuffer buf;
+    private final byte[] digits = new byte[11];
+    private final MessageDigest sha256 = Digest.sha256();
+    private boolean digesting;
+    private long length;
+    private FileChannel ch;
+
+    public OutputWriter() {
+        this(64 * 1024);
+    }
+
+    public OutputWriter(int capacity) {
+        this.buf = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /** Empieza un fichero nuevo (lo crea o lo vacía). */
+    public OutputWriter open(Path file) throws IOException {
+        return open(file, false);
+    }
+
+    /** Igual, y con digest calcula la huella de lo que se escriba (ver digest()). */
+    public OutputWriter open(Path file, boolean digest) throws IOException {
+        if (ch != null) close();
+        ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        buf.clear();
+        sha256.reset();
+        digesting = digest;
+        length = 0;
+        return this;
+    }
+
+    /** Huella de lo escrito desde open(file, true); se pide una vez, tras close(). */
+    public Digest digest() { return new Digest(length, sha256.digest()); }
+
+    public OutputWriter write(char c) throws IOException {
+        if (c < 0x80) {
+            if (!buf.hasRemaining()) flush();
+            buf.put((byte) c);
+        } else {
+            writeNonAscii(c, '\0');
+        }
+        return this;
+    }
+
+    public OutputWriter write(String s) throws IOException {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (!buf.hasRemaining()) flush();
+                buf.put((byte) c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                writeNonAscii(c, s.charAt(++i));
+            } else {
+                writeNonAscii(c, '\0');
+            }
+        }
+        return this;
+    }
+
+    // Igual que String.getBytes(UTF_8): un surrogate suelto sale como '?'
+    private void writeNonAscii(char c, char low) throws IOException {
+        if (buf.remaining() < 4) flush();
+        if (low != '\0') {
+            int cp = Character.toCodePoint(c, low);
+            buf.put((byte) (0xF0 | (cp >> 18)));
+            buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+            buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            buf.put((byte) (0x80 | (cp & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            buf.put((byte) '?');
+        } else if (c < 0x800) {
+            buf.put((byte) (0xC0 | (c >> 6)));
+            buf.put((byte) (0x80 | (c & 0x3F)));
+        } else {
+            buf.put((byte) (0xE0 | (c >> 12)));
+            buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buf.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    /** Entero en decimal (como %d). */
+    public OutputWriter writeInt(int v) throws IOException {
+        if (buf.remaining() < digits.length) flush();
+        long x = v;
+        if (x < 0) {
+            buf.put((byte) '-');
+            x = -x;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + (x % 10));
+            x /= 10;
+        } while (x != 0);
+        while (n > 0) buf.put(digits[--n]);
+        return this;
+    }
+
+    /** Texto alineado a la izquierda con espacios hasta width (como %-Ns). */
+    public OutputWriter pad(String s, int width) throws IOException {
+        write(s);
+        return spaces(width - s.length());
+    }
+
+    public OutputWriter spaces(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            if (!buf.hasRemaining()) flush();
+            buf.put((byte) ' ');
+        }
+        return this;
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        if (digesting) {
+            length += buf.remaining();
+            sha256.update(buf);
+            buf.rewind();
+        }
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    /** Vuelca lo pendiente y cierra el fichero actual (el buffer sigue valiendo). */
+    @Override
+    public void close() throws IOException {
+        if (ch == null) return;
+        try {
+            flush();
+        } finally {
+            ch.close();
+            ch = null;
+        }
+    }
+}
@@ -7,13 +7,23 @@ import java.nio.file.Path;
 public class SourceReader {
     private final String input;
     private int idx = 0;
-    private int line = 1;
-    private int col = 1;
+    private final LineIndex lines;
 
 public SourceReader(Path path) throws IOException {
-    this.input = new String(Files.readAllBytes(path));
+    this(new String(Files.readAllBytes(path)));
 }
 
+    public SourceReader(String input) {
+        this.input = input;
+        this.lines = new LineIndex(input);
+    }
+
+    /** Lector que empieza a mitad de texto. */
+    public SourceReader(String input, int offset) {
+        this(input);
+        this.idx = offset;
+    }
+
     public boolean isEOF() {
         return idx >= input.length();
     }
@@ -28,12 +38,12 @@ public SourceReader(Path path) throws IOException {
 
     public char next() {
         if (isEOF()) return '\0';
-        char c = input.charAt(idx++);
-        if (c == '\n') { line++; col = 1; }
-        else { col++; }
-        return c;
+        return input.charAt(idx++);
     }
 
-    public int getLine() { return line; }
-    public int getCol() { return col; }
+    // línea/columna solo se calculan cuando se piden
+    public int getLine() { return lines.line(idx); }
+    public int getCol() { return lines.col(idx); }
+    public int getOffset() { return idx; }
+    public LineIndex lines() { return lines; }
 }